@@ -22,12 +22,16 @@ package br.usp.poli.lta.cereda.eventengine;
 
 import br.usp.poli.lta.cereda.eventengine.model.Engine;
 import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.EventPool;
 import br.usp.poli.lta.cereda.eventengine.util.EngineReader;
 import br.usp.poli.lta.cereda.eventengine.util.Pair;
 import br.usp.poli.lta.cereda.eventengine.util.TableUtils;
 import br.usp.poli.lta.cereda.eventengine.util.YAMLReader;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -45,9 +49,14 @@ public class Shell {
     // tipos de ações da sessão
     public enum Action {
         READ_ENGINE,
-        READ_EVENTS
+        READ_EVENTS,
+        STREAM_EVENTS
     }
 
+    // número de eventos por lote na
+    // leitura sob demanda de eventos
+    private static final int BATCH = 1024;
+
     /**
      * Método principal.
      *
@@ -131,6 +140,7 @@ public class Shell {
             Map<String, Object> map = new HashMap<>();
             map.put("load", Shell.class.getMethod("load", String.class));
             map.put("query", Shell.class.getMethod("query", String.class));
+            map.put("stream", Shell.class.getMethod("stream", String.class));
 
             // verifica se o motor de eventos
             // é uma referência válida
@@ -239,22 +249,17 @@ public class Shell {
                             // tabela de execução
                             System.out.println(TableUtils.header());
 
-                            // contador do evento
-                            // corrente no motor
-                            int counter = 0;
-
-                            // submete cada evento ao
-                            // motor de eventos existente
-                            for (Event event : events) {
-
-                                // consome o evento corrente
-                                boolean task = engine.consume(event);
-
-                                // exibe a célula com o
-                                // resultado parcial
-                                System.out.println(TableUtils.line(++counter,
-                                        event.getAttributes().toString(),
-                                        task));
+                            // submete a lista de eventos,
+                            // em lote, ao motor de eventos
+                            // existente
+                            BitSet tasks = engine.consumeAll(events);
+
+                            // exibe as células com os
+                            // resultados parciais
+                            for (int i = 0; i < events.size(); i++) {
+                                System.out.println(TableUtils.line(i + 1,
+                                        events.get(i).getAttributes().
+                                                toString(), tasks.get(i)));
                             }
 
                             // pula uma linha para
@@ -275,6 +280,129 @@ public class Shell {
                         // da especificação de uma
                         // lista de eventos
                         break;
+
+                    // leitura sob demanda de um
+                    // arquivo contendo a especificação
+                    // de uma lista de eventos, com
+                    // eventos reutilizáveis
+                    case STREAM_EVENTS:
+
+                        // é necessário que exista uma
+                        // referência válida de um motor
+                        // de eventos
+                        if (engine != null) {
+
+                            // obtém um conjunto de eventos
+                            // reutilizáveis, cujos atributos
+                            // seguem o esquema das regras
+                            Engine current = engine;
+                            EventPool pool = new EventPool(1,
+                                    current.getRuleSet() != null
+                                    ? current.getRuleSet().getSchema()
+                                    : null, false);
+
+                            // obtém um iterador sobre a
+                            // lista de eventos, lida sob
+                            // demanda
+                            Iterator<Event> events = reader.toEvents(file,
+                                    pool);
+
+                            // a lista de eventos está
+                            // pronta para a leitura
+                            if (events != null) {
+
+                                // exibe mensagem
+                                System.out.println("Lista de eventos"
+                                        + " carregada com sucesso.");
+
+                                // exibe o tamanho dos lotes
+                                System.out.println(String.format(
+                                        "Processando eventos em lotes de %d"
+                                        + " eventos, aguarde...", BATCH));
+
+                                // pula uma linha para
+                                // desenhar a tabela de
+                                // execução
+                                System.out.println();
+
+                                // imprime o cabeçalho da
+                                // tabela de execução
+                                System.out.println(TableUtils.header());
+
+                                // associa a devolução dos
+                                // eventos consumidos ao
+                                // motor de eventos
+                                current.setRecycler(pool::recycle);
+                                int count = 0;
+                                try {
+                                    while (events.hasNext()) {
+
+                                        // submete um lote de eventos
+                                        // ao motor de eventos, lidos
+                                        // à medida que são consumidos,
+                                        // registrando seus atributos
+                                        // antes da devolução
+                                        List<String> lines
+                                                = new ArrayList<>(BATCH);
+                                        BitSet tasks = current.consumeAll(
+                                                new Iterator<Event>() {
+
+                                            @Override
+                                            public boolean hasNext() {
+                                                return lines.size() < BATCH
+                                                        && events.hasNext();
+                                            }
+
+                                            @Override
+                                            public Event next() {
+                                                Event event = events.next();
+                                                lines.add(event.
+                                                        getAttributes().
+                                                        toString());
+                                                return event;
+                                            }
+
+                                        });
+
+                                        // exibe as células com os
+                                        // resultados parciais
+                                        for (int i = 0; i < lines.size();
+                                                i++) {
+                                            System.out.println(TableUtils.
+                                                    line(count + i + 1,
+                                                            lines.get(i),
+                                                            tasks.get(i)));
+                                        }
+                                        count += lines.size();
+                                    }
+                                } finally {
+                                    current.setRecycler(null);
+                                }
+
+                                // pula uma linha e exibe
+                                // quantos eventos foram
+                                // processados
+                                System.out.println();
+                                System.out.println(String.format("%d"
+                                        + " evento%s processado%s.", count,
+                                        (count != 1 ? "s" : ""),
+                                        (count != 1 ? "s" : "")));
+                            }
+
+                        } else {
+
+                            // motor de eventos não foi
+                            // definido, reportar erro
+                            System.out.println("Não é possível processar a"
+                                    + " lista de eventos (motor não"
+                                    + " definido).");
+
+                        }
+
+                        // encerra o bloco de leitura
+                        // sob demanda da especificação
+                        // de uma lista de eventos
+                        break;
                 }
 
             }
@@ -289,8 +417,14 @@ public class Shell {
                 // potencial a processar
                 if (result instanceof HashMap) {
 
-                    // cria-se um novo evento
+                    // cria-se um novo evento, cujos
+                    // atributos seguem o esquema das
+                    // regras, se houver
                     Event event = new Event();
+                    if (engine.getRuleSet() != null) {
+                        event.setAttributes(engine.getRuleSet().
+                                getSchema().map());
+                    }
 
                     // preenche os atributos
                     // do evento a partir da
@@ -349,6 +483,19 @@ public class Shell {
         return new Pair<>(Shell.Action.READ_EVENTS, new File(reference));
     }
 
+    /**
+     * Retorna o arquivo de acordo com a referência informada e ação de sessão
+     * correspondente para leitura sob demanda, com eventos reutilizáveis, de
+     * uma especificação de lista de eventos.
+     *
+     * @param reference Referência.
+     * @return Arquivo correspondente e ação de sessão para leitura sob
+     * demanda de lista de eventos.
+     */
+    public static Pair<Shell.Action, File> stream(String reference) {
+        return new Pair<>(Shell.Action.STREAM_EVENTS, new File(reference));
+    }
+
     /**
      * Obtém o logotipo da sessão.
      *
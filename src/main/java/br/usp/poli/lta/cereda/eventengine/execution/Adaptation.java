@@ -0,0 +1,241 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Implementa a ordenação adaptativa das condições das regras. O custo e a
+ * taxa de aprovação de cada condição distinta são amostrados durante a
+ * avaliação, e periodicamente as condições de cada regra são reordenadas de
+ * tal modo que condições baratas e seletivas sejam avaliadas primeiro,
+ * aproveitando a interrupção da avaliação na primeira condição não satisfeita.
+ * Apenas regras cujas condições não têm efeitos colaterais (atribuições,
+ * incrementos, decrementos ou chamadas de métodos) são reordenadas.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+class Adaptation {
+
+    // máscara de amostragem das avaliações
+    // de condições (uma a cada dezesseis)
+    static final int SAMPLING = 15;
+
+    // máscara do período de reordenação,
+    // em eventos por contexto de avaliação
+    static final int PERIOD = 8191;
+
+    // número mínimo de amostras de
+    // uma condição para sua ordenação
+    private static final int MINIMUM = 8;
+
+    // número de amostras a partir do qual
+    // as estatísticas são reduzidas à metade
+    private static final int DECAY = 1 << 16;
+
+    // textos literais, desconsiderados na
+    // verificação de efeitos colaterais
+    static final Pattern LITERAL = Pattern.compile(
+            "'(?:[^'\\\\]|\\\\.)*'|\"(?:[^\"\\\\]|\\\\.)*\"");
+
+    // atribuições, incrementos, decrementos,
+    // chamadas de métodos e sequências
+    private static final Pattern EFFECT = Pattern.compile(
+            "(?<![=!<>])=(?!=)|\\+\\+|--|[\\w$]\\s*\\(|;");
+
+    // custo acumulado, número de amostras e
+    // número de aprovações de cada condição
+    private final AtomicLongArray cost;
+    private final AtomicIntegerArray samples;
+    private final AtomicIntegerArray passes;
+
+    // indica se cada condição é
+    // livre de efeitos colaterais
+    private final boolean[] pure;
+
+    // indica se há uma reordenação em andamento
+    private final AtomicBoolean busy;
+
+    /**
+     * Construtor.
+     *
+     * @param network Rede de condições.
+     */
+    Adaptation(ConditionNetwork network) {
+        int size = network.size();
+        this.cost = new AtomicLongArray(size);
+        this.samples = new AtomicIntegerArray(size);
+        this.passes = new AtomicIntegerArray(size);
+        this.pure = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            pure[i] = isPure(network.getSource(i));
+        }
+        this.busy = new AtomicBoolean();
+    }
+
+    /**
+     * Verifica se a condição informada é livre de efeitos colaterais.
+     *
+     * @param source Representação textual da condição.
+     * @return Valor lógico informando se a condição é livre de efeitos
+     * colaterais.
+     */
+    static boolean isPure(String source) {
+        return !EFFECT.matcher(LITERAL.matcher(source).replaceAll("''")).
+                find();
+    }
+
+    /**
+     * Registra uma amostra da avaliação da condição informada.
+     *
+     * @param identifier Identificador da condição.
+     * @param elapsed Tempo de avaliação, em nanossegundos.
+     * @param result Resultado da avaliação.
+     */
+    void record(int identifier, long elapsed, boolean result) {
+        cost.addAndGet(identifier, elapsed);
+        samples.incrementAndGet(identifier);
+        if (result) {
+            passes.incrementAndGet(identifier);
+        }
+    }
+
+    /**
+     * Reordena as condições das regras informadas de acordo com as
+     * estatísticas correntes. Caso outra reordenação esteja em andamento, a
+     * reordenação é ignorada.
+     *
+     * @param rules Lista de regras compiladas.
+     */
+    void reorder(List<CompiledRule> rules) {
+        if (!busy.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            double[] scores = new double[pure.length];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = score(i);
+            }
+            for (CompiledRule rule : rules) {
+                reorder(rule, scores);
+            }
+            decay();
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    /**
+     * Reordena as condições da regra informada, substituindo a ordem corrente
+     * apenas se houver alteração.
+     *
+     * @param rule Regra compilada.
+     * @param scores Pontuações das condições, potencialmente indefinidas.
+     */
+    private void reorder(CompiledRule rule, double[] scores) {
+        int[] identifiers = rule.getIdentifiers();
+        if (identifiers.length < 2 || rule.isPinned()) {
+            return;
+        }
+
+        // condições sem amostras suficientes recebem
+        // a média das pontuações conhecidas da regra
+        double total = 0;
+        int known = 0;
+        for (int identifier : identifiers) {
+            if (!pure[identifier]) {
+                return;
+            }
+            if (!Double.isNaN(scores[identifier])) {
+                total += scores[identifier];
+                known++;
+            }
+        }
+        if (known == 0) {
+            return;
+        }
+        double average = total / known;
+        double[] keys = new double[identifiers.length];
+        Integer[] positions = new Integer[identifiers.length];
+        for (int i = 0; i < identifiers.length; i++) {
+            double score = scores[identifiers[i]];
+            keys[i] = Double.isNaN(score) ? average : score;
+            positions[i] = i;
+        }
+
+        // ordenação estável, mantendo a ordem
+        // original em caso de empate
+        Arrays.sort(positions, (Integer a, Integer b)
+                -> Double.compare(keys[a], keys[b]));
+        int[] order = new int[positions.length];
+        boolean identity = true;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = positions[i];
+            identity = identity && order[i] == i;
+        }
+        int[] current = rule.getOrder();
+        if (current == null ? !identity
+                : !Arrays.equals(current, order)) {
+            rule.reorder(identity ? null : order);
+        }
+    }
+
+    /**
+     * Obtém a pontuação da condição informada: o custo médio por avaliação
+     * dividido pela probabilidade de a condição não ser satisfeita. Menores
+     * pontuações são avaliadas primeiro.
+     *
+     * @param identifier Identificador da condição.
+     * @return Pontuação da condição ou um valor indefinido, caso não existam
+     * amostras suficientes.
+     */
+    private double score(int identifier) {
+        int count = samples.get(identifier);
+        if (count < MINIMUM) {
+            return Double.NaN;
+        }
+        double average = (double) cost.get(identifier) / count;
+        double failure = 1.0 - (double) passes.get(identifier) / count;
+        return average / Math.max(failure, 1.0 / DECAY);
+    }
+
+    /**
+     * Reduz à metade as estatísticas das condições com muitas amostras, de
+     * tal modo que alterações no perfil dos eventos sejam refletidas.
+     */
+    private void decay() {
+        for (int i = 0; i < pure.length; i++) {
+            if (samples.get(i) >= DECAY) {
+                cost.set(i, cost.get(i) / 2);
+                passes.set(i, passes.get(i) / 2);
+                samples.set(i, samples.get(i) / 2);
+            }
+        }
+    }
+
+}
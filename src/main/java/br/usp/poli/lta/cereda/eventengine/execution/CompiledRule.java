@@ -0,0 +1,449 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import br.usp.poli.lta.cereda.eventengine.model.Rule;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Implementa a forma compilada de uma regra do motor de eventos.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class CompiledRule {
+
+    // referências ao mapa de atributos do evento
+    // que não sejam acessos a atributos, e que
+    // podem portanto retê-lo além do consumo
+    private static final Pattern RETAINING = Pattern.compile(
+            "\\bevent\\b(?!\\s*(?:\\[|\\.\\s*(?:[A-Za-z_$][\\w$]*\\b"
+            + "(?!\\s*\\()|(?:get|getOrDefault|containsKey|containsValue"
+            + "|isEmpty|size)\\s*\\()))");
+
+    // cadeia de acesso (raiz seguida de acessos a
+    // propriedades ou índices) ao final de um trecho
+    private static final String ACCESS = "((?:\\s*(?:\\.\\s*"
+            + "[A-Za-z_$][\\w$]*|\\[(?:[^\\[\\]]|\\[[^\\[\\]]*\\])*\\]))*)";
+    private static final Pattern BEFORE = Pattern.compile(
+            "(?<![\\w$.])([A-Za-z_$][\\w$]*)" + ACCESS + "\\s*$");
+    private static final Pattern AFTER = Pattern.compile(
+            "^\\s*([A-Za-z_$][\\w$]*)" + ACCESS);
+
+    // criações de objetos, variáveis locais,
+    // atribuições, incrementos e chamadas
+    private static final Pattern CREATION = Pattern.compile(
+            "\\bnew\\s+[\\w$.]+\\s*(?=\\()");
+    private static final Pattern LOCAL = Pattern.compile(
+            "(?<![\\w$.\\]])([A-Za-z_$][\\w$]*)\\s*=(?!=)\\s*(new\\b)?");
+    private static final Pattern ASSIGNMENT = Pattern.compile(
+            "(?<![=!<>+\\-*/%&|^])[+\\-*/%&|^]?=(?!=)|\\+\\+|--");
+    private static final Pattern CALL = Pattern.compile(
+            "(\\.\\s*)?([A-Za-z_$][\\w$]*)\\s*\\(");
+
+    // palavras reservadas seguidas de parênteses
+    // e métodos permitidos em cada raiz, que não
+    // alteram valores referenciados pela raiz
+    private static final Set<String> KEYWORDS = new HashSet<>(
+            Arrays.asList("if", "else", "for", "foreach", "while", "until",
+                    "do", "return"));
+    private static final Set<String> CONFIGURATION = new HashSet<>(
+            Arrays.asList("get", "getOrDefault", "containsKey",
+                    "containsValue", "isEmpty", "size", "put", "putIfAbsent",
+                    "remove"));
+    private static final Set<String> EVENT = new HashSet<>(
+            Arrays.asList("get", "getOrDefault", "containsKey",
+                    "containsValue", "isEmpty", "size"));
+    private static final Set<String> OUTPUT = new HashSet<>(
+            Arrays.asList("add", "isEmpty", "size"));
+
+    // regra original
+    private final Rule rule;
+
+    // posição da regra no conjunto
+    // de regras compiladas
+    private final int ordinal;
+
+    // representação textual das condições
+    private final String[] sources;
+
+    // identificadores das condições
+    // na rede de condições
+    private final int[] identifiers;
+
+    // condições compiladas
+    private final Serializable[] conditions;
+
+    // ações compiladas
+    private final Serializable[] actions;
+
+    // indica se a regra pode reter o
+    // mapa de atributos do evento
+    private final boolean retaining;
+
+    // indica se as condições e ações alteram
+    // a configuração apenas por meio de seus
+    // atributos de primeiro nível
+    private final boolean isolated;
+
+    // ordem adaptativa de avaliação das
+    // condições, potencialmente inválida
+    // (ordem original), substituída como
+    // um todo a cada reordenação
+    private volatile int[] order;
+
+    // indica se a ordem original deve ser
+    // mantida, após uma falha de avaliação
+    // fora da ordem original
+    private volatile boolean pinned;
+
+    // posições das condições de igualdade
+    // utilizadas no índice de regras
+    private int eventPosition;
+    private int configurationPosition;
+
+    /**
+     * Construtor.
+     *
+     * @param rule Regra a ser compilada.
+     * @param ordinal Posição da regra no conjunto de regras compiladas.
+     * @param network Rede de condições na qual as condições da regra são
+     * registradas.
+     */
+    public CompiledRule(Rule rule, int ordinal, ConditionNetwork network) {
+        this.rule = rule;
+        this.ordinal = ordinal;
+        this.sources = rule.getConditions().toArray(new String[0]);
+        this.identifiers = new int[sources.length];
+        this.conditions = new Serializable[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            identifiers[i] = network.register(sources[i]);
+            conditions[i] = network.getCondition(identifiers[i]);
+        }
+        this.actions = rule.getActions().stream().
+                map(Increment::compile).toArray(Serializable[]::new);
+        this.retaining = rule.getConditions().stream().
+                anyMatch((String source) -> RETAINING.matcher(source).find())
+                || rule.getActions().stream().anyMatch((String source)
+                        -> RETAINING.matcher(source).find());
+        this.isolated = rule.getConditions().stream().
+                allMatch(CompiledRule::isolated)
+                && rule.getActions().stream().
+                        allMatch(CompiledRule::isolated);
+        this.eventPosition = -1;
+        this.configurationPosition = -1;
+    }
+
+    /**
+     * Obtém a regra original.
+     *
+     * @return Regra original.
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Obtém a posição da regra no conjunto de regras compiladas.
+     *
+     * @return Posição da regra no conjunto de regras compiladas.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Obtém a representação textual das condições, na mesma ordem das
+     * condições compiladas.
+     *
+     * @return Representação textual das condições.
+     */
+    public String[] getSources() {
+        return sources;
+    }
+
+    /**
+     * Obtém os identificadores das condições na rede de condições, na mesma
+     * ordem das condições compiladas.
+     *
+     * @return Identificadores das condições.
+     */
+    public int[] getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * Obtém as condições compiladas da regra.
+     *
+     * @return Condições compiladas da regra.
+     */
+    public Serializable[] getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Obtém as ações compiladas da regra.
+     *
+     * @return Ações compiladas da regra.
+     */
+    public Serializable[] getActions() {
+        return actions;
+    }
+
+    /**
+     * Verifica se as condições ou ações da regra referenciam o mapa de
+     * atributos do evento de outra forma que não o acesso a seus atributos,
+     * podendo, portanto, retê-lo na configuração ou em eventos de saída.
+     *
+     * @return Valor lógico informando se a regra pode reter o evento.
+     */
+    public boolean isRetaining() {
+        return retaining;
+    }
+
+    /**
+     * Verifica se as condições e ações da regra alteram a configuração apenas
+     * por meio de seus atributos de primeiro nível, sem alterar os valores
+     * neles armazenados, o evento, o ambiente de execução ou objetos
+     * externos. Somente regras isoladas podem ser avaliadas especulativamente,
+     * sobre um mapa sobreposto à configuração.
+     *
+     * @return Valor lógico informando se a regra é isolada.
+     */
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    /**
+     * Verifica, de forma conservadora, se a expressão informada altera a
+     * configuração apenas por meio de seus atributos de primeiro nível. São
+     * permitidas as atribuições a variáveis locais, a atributos da
+     * configuração e a atributos de objetos criados na própria expressão, e
+     * as chamadas a métodos de consulta e alteração de atributos da
+     * configuração, de consulta do evento, de adição de eventos de saída e de
+     * objetos criados na própria expressão.
+     *
+     * @param source Expressão.
+     * @return Valor lógico informando se a expressão é isolada.
+     */
+    private static boolean isolated(String source) {
+        String text = Adaptation.LITERAL.matcher(source).replaceAll("''");
+
+        // variáveis locais que referenciam
+        // apenas objetos criados na expressão
+        Set<String> created = new HashSet<>();
+        Set<String> aliased = new HashSet<>();
+        Matcher matcher = LOCAL.matcher(text);
+        while (matcher.find()) {
+            (matcher.group(2) != null ? created : aliased).
+                    add(matcher.group(1));
+        }
+        created.removeAll(aliased);
+        text = CREATION.matcher(text).replaceAll("");
+
+        // alvos das atribuições, incrementos
+        // e decrementos
+        matcher = ASSIGNMENT.matcher(text);
+        while (matcher.find()) {
+            Matcher target = BEFORE.matcher(text.substring(0,
+                    matcher.start()));
+            if (!target.find()) {
+                if (!matcher.group().equals("++")
+                        && !matcher.group().equals("--")) {
+                    return false;
+                }
+                target = AFTER.matcher(text.substring(matcher.end()));
+                if (!target.find()) {
+                    return false;
+                }
+            }
+            String root = target.group(1);
+            int depth = depth(target.group(2));
+            if (depth != 0 && !(depth == 1 && (root.equals("configuration")
+                    || created.contains(root)))) {
+                return false;
+            }
+        }
+
+        // receptores das chamadas de métodos
+        matcher = CALL.matcher(text);
+        while (matcher.find()) {
+            String name = matcher.group(2);
+            if (matcher.group(1) == null) {
+                if (!KEYWORDS.contains(name)) {
+                    return false;
+                }
+                continue;
+            }
+            Matcher receiver = BEFORE.matcher(text.substring(0,
+                    matcher.start()));
+            if (!receiver.find() || depth(receiver.group(2)) != 0) {
+                return false;
+            }
+            String root = receiver.group(1);
+            if (!created.contains(root)
+                    && !(root.equals("configuration")
+                    && CONFIGURATION.contains(name))
+                    && !(root.equals("event") && EVENT.contains(name))
+                    && !(root.equals("output") && OUTPUT.contains(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Obtém o número de acessos a propriedades ou índices de uma cadeia de
+     * acesso.
+     *
+     * @param chain Acessos da cadeia.
+     * @return Número de acessos.
+     */
+    private static int depth(String chain) {
+        int depth = 0;
+        int nesting = 0;
+        for (char symbol : chain.toCharArray()) {
+            if (symbol == '[') {
+                if (nesting++ == 0) {
+                    depth++;
+                }
+            } else if (symbol == ']') {
+                nesting--;
+            } else if (symbol == '.' && nesting == 0) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Obtém a posição da condição de igualdade sobre o evento utilizada no
+     * índice de regras.
+     *
+     * @return Posição da condição ou -1, caso não exista.
+     */
+    public int getEventPosition() {
+        return eventPosition;
+    }
+
+    /**
+     * Obtém a posição da condição de igualdade sobre a configuração utilizada
+     * no índice de regras.
+     *
+     * @return Posição da condição ou -1, caso não exista.
+     */
+    public int getConfigurationPosition() {
+        return configurationPosition;
+    }
+
+    /**
+     * Define as posições das condições de igualdade utilizadas no índice de
+     * regras.
+     *
+     * @param event Posição da condição sobre o evento.
+     * @param configuration Posição da condição sobre a configuração.
+     */
+    void index(int event, int configuration) {
+        this.eventPosition = event;
+        this.configurationPosition = configuration;
+    }
+
+    /**
+     * Verifica se as condições da regra são satisfeitas no contexto de
+     * avaliação informado, ignorando as condições já garantidas pelo índice de
+     * regras. Condições compartilhadas com outras regras são avaliadas apenas
+     * uma vez por contexto.
+     *
+     * @param evaluation Contexto de avaliação.
+     * @param first Posição da primeira condição a ser ignorada.
+     * @param second Posição da segunda condição a ser ignorada.
+     * @return Valor lógico informando se a regra é aplicável.
+     */
+    public boolean matches(Evaluation evaluation, int first, int second) {
+        int[] current = order;
+        if (current != null) {
+            try {
+                for (int i : current) {
+                    if (i != first && i != second
+                            && !evaluation.test(identifiers[i])) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (RuntimeException exception) {
+
+                // a condição pode depender de condições
+                // anteriores na ordem original (por
+                // exemplo, da existência de um atributo),
+                // de tal modo que a ordem original é
+                // restaurada e mantida; os resultados já
+                // obtidos permanecem memorizados
+                order = null;
+                pinned = true;
+            }
+        }
+        for (int i = 0; i < identifiers.length; i++) {
+            if (i != first && i != second
+                    && !evaluation.test(identifiers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Obtém a ordem adaptativa de avaliação das condições.
+     *
+     * @return Posições das condições na ordem de avaliação ou uma referência
+     * inválida, caso a ordem original seja utilizada.
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Define a ordem adaptativa de avaliação das condições.
+     *
+     * @param order Posições das condições na ordem de avaliação ou uma
+     * referência inválida, para a ordem original.
+     */
+    void reorder(int[] order) {
+        if (!pinned || order == null) {
+            this.order = order;
+        }
+    }
+
+    /**
+     * Verifica se a ordem original das condições deve ser mantida.
+     *
+     * @return Valor lógico informando se a ordem original deve ser mantida.
+     */
+    boolean isPinned() {
+        return pinned;
+    }
+
+}
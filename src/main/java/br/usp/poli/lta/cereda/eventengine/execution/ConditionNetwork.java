@@ -0,0 +1,116 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.mvel2.MVEL;
+
+/**
+ * Implementa a rede de condições de um conjunto de regras. Condições
+ * idênticas em regras distintas são compiladas uma única vez e recebem o mesmo
+ * identificador, de tal modo que cada condição é avaliada no máximo uma vez
+ * por evento.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class ConditionNetwork {
+
+    // mapa das condições para
+    // seus identificadores
+    private final Map<String, Integer> identifiers;
+
+    // lista de condições distintas
+    private final List<String> sources;
+
+    // lista de condições compiladas
+    private final List<Serializable> conditions;
+
+    /**
+     * Construtor.
+     */
+    public ConditionNetwork() {
+        identifiers = new HashMap<>();
+        sources = new ArrayList<>();
+        conditions = new ArrayList<>();
+    }
+
+    /**
+     * Registra a condição na rede, compilando-a caso ainda não exista.
+     *
+     * @param condition Condição a ser registrada.
+     * @return Identificador da condição.
+     */
+    public int register(String condition) {
+        Integer identifier = identifiers.get(condition);
+        if (identifier == null) {
+            identifier = sources.size();
+            identifiers.put(condition, identifier);
+            sources.add(condition);
+            conditions.add(MVEL.compileExpression(condition));
+        }
+        return identifier;
+    }
+
+    /**
+     * Obtém o número de condições distintas da rede.
+     *
+     * @return Número de condições distintas.
+     */
+    public int size() {
+        return sources.size();
+    }
+
+    /**
+     * Obtém a representação textual da condição informada.
+     *
+     * @param identifier Identificador da condição.
+     * @return Representação textual da condição.
+     */
+    public String getSource(int identifier) {
+        return sources.get(identifier);
+    }
+
+    /**
+     * Obtém a condição compilada informada.
+     *
+     * @param identifier Identificador da condição.
+     * @return Condição compilada.
+     */
+    public Serializable getCondition(int identifier) {
+        return conditions.get(identifier);
+    }
+
+    /**
+     * Cria um novo contexto de avaliação para a rede de condições.
+     *
+     * @return Novo contexto de avaliação.
+     */
+    public Evaluation evaluation() {
+        return new Evaluation(conditions.toArray(new Serializable[0]));
+    }
+
+}
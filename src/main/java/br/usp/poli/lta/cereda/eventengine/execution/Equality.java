@@ -0,0 +1,195 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Implementa uma condição de igualdade entre um atributo da configuração ou do
+ * evento e um valor constante, reconhecida no carregamento das regras.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Equality {
+
+    // padrão de acesso a um atributo,
+    // como em event['symbol'] ou event.symbol
+    private static final String ACCESS = "(configuration|event)\\s*"
+            + "(?:\\[\\s*(?:'([^'\\\\]*)'|\"([^\"\\\\]*)\")\\s*\\]"
+            + "|\\.\\s*([A-Za-z_][A-Za-z0-9_]*))";
+
+    // padrão de um valor constante, como
+    // em 'a', "a", 1, -1, true ou false
+    private static final String LITERAL = "('([^'\\\\]*)'|\"([^\"\\\\]*)\""
+            + "|-?(?:0|[1-9]\\d{0,17})|true|false)";
+
+    // atributo à esquerda da igualdade
+    private static final Pattern LEFT = Pattern.compile("^\\s*" + ACCESS
+            + "\\s*==\\s*" + LITERAL + "\\s*$");
+
+    // atributo à direita da igualdade
+    private static final Pattern RIGHT = Pattern.compile("^\\s*" + LITERAL
+            + "\\s*==\\s*" + ACCESS + "\\s*$");
+
+    // origem do atributo
+    // (configuration ou event)
+    private final String source;
+
+    // chave do atributo
+    private final String key;
+
+    // valor constante normalizado
+    private final Object value;
+
+    /**
+     * Construtor.
+     *
+     * @param source Origem do atributo.
+     * @param key Chave do atributo.
+     * @param value Valor constante normalizado.
+     */
+    private Equality(String source, String key, Object value) {
+        this.source = source;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Reconhece uma condição de igualdade constante.
+     *
+     * @param condition Condição a ser analisada.
+     * @return Igualdade reconhecida ou uma referência inválida, caso a
+     * condição não seja uma igualdade constante.
+     */
+    public static Equality parse(String condition) {
+        Matcher matcher = LEFT.matcher(condition);
+        if (matcher.matches()) {
+            return new Equality(matcher.group(1), first(matcher.group(2),
+                    matcher.group(3), matcher.group(4)),
+                    literal(matcher.group(5), matcher.group(6),
+                            matcher.group(7)));
+        }
+        matcher = RIGHT.matcher(condition);
+        if (matcher.matches()) {
+            return new Equality(matcher.group(4), first(matcher.group(5),
+                    matcher.group(6), matcher.group(7)),
+                    literal(matcher.group(1), matcher.group(2),
+                            matcher.group(3)));
+        }
+        return null;
+    }
+
+    /**
+     * Normaliza um valor para consulta em índices. Apenas valores cuja
+     * igualdade no MVEL coincide com a igualdade de Java dentro do mesmo tipo
+     * normalizado são aceitos; inteiros são convertidos para o tipo longo.
+     *
+     * @param value Valor a ser normalizado.
+     * @return Valor normalizado ou uma referência inválida, caso o valor não
+     * seja suportado.
+     */
+    public static Object normalize(Object value) {
+        if (value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
+
+    /**
+     * Obtém a origem do atributo.
+     *
+     * @return Origem do atributo (configuration ou event).
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Obtém a chave do atributo.
+     *
+     * @return Chave do atributo.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Obtém o valor constante normalizado.
+     *
+     * @return Valor constante normalizado.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Verifica se o atributo pertence ao evento.
+     *
+     * @return Valor lógico indicando se o atributo pertence ao evento.
+     */
+    public boolean isEvent() {
+        return source.equals("event");
+    }
+
+    /**
+     * Obtém o primeiro elemento válido.
+     *
+     * @param elements Elementos.
+     * @return Primeiro elemento válido.
+     */
+    private static String first(String... elements) {
+        for (String element : elements) {
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converte a representação textual de um valor constante.
+     *
+     * @param text Representação textual completa.
+     * @param single Conteúdo entre aspas simples.
+     * @param dual Conteúdo entre aspas duplas.
+     * @return Valor constante normalizado.
+     */
+    private static Object literal(String text, String single, String dual) {
+        if (single != null) {
+            return single;
+        }
+        if (dual != null) {
+            return dual;
+        }
+        if (text.equals("true") || text.equals("false")) {
+            return Boolean.valueOf(text);
+        }
+        return Long.valueOf(text);
+    }
+
+}
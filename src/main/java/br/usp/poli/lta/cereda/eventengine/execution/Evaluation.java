@@ -0,0 +1,157 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import br.usp.poli.lta.cereda.eventengine.model.Configuration;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.Rule;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.mvel2.MVEL;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+/**
+ * Implementa um contexto de avaliação da rede de condições. Os resultados das
+ * condições são memorizados até que um novo par configuração/evento seja
+ * associado ao contexto. O contexto também mantém as estruturas auxiliares
+ * reutilizadas a cada evento e não deve ser compartilhado entre linhas de
+ * execução.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Evaluation {
+
+    // condições compiladas da rede
+    private final Serializable[] conditions;
+
+    // marcas de avaliação e resultados
+    // memorizados de cada condição
+    private final int[] stamps;
+    private final boolean[] results;
+
+    // marca da avaliação corrente
+    private int epoch;
+
+    // mapa de variáveis das condições
+    private final Map<String, Object> input;
+
+    // fábrica de variáveis das condições
+    private final VariableResolverFactory variables;
+
+    // listas de regras candidatas e seus
+    // cursores, reutilizados pelo índice
+    final CompiledRule[][] candidates;
+    final int[] cursors;
+
+    // número de listas de regras candidatas
+    // e indicadores de consulta exata
+    int size;
+    boolean eventExact;
+    boolean configurationExact;
+
+    // vetores auxiliares de regras candidatas
+    // e resultados da avaliação paralela
+    CompiledRule[] flat;
+    boolean[] flags;
+
+    // listas reutilizadas de regras aplicáveis
+    final List<CompiledRule> selected;
+    final List<Rule> matches;
+
+    // ordenação adaptativa das condições,
+    // potencialmente inválida, e contadores
+    // de amostragem e de eventos avaliados
+    Adaptation adaptation;
+    private int ticks;
+    int events;
+
+    /**
+     * Construtor.
+     *
+     * @param conditions Condições compiladas da rede.
+     */
+    public Evaluation(Serializable[] conditions) {
+        this.conditions = conditions;
+        this.stamps = new int[conditions.length];
+        this.results = new boolean[conditions.length];
+        this.epoch = 0;
+        this.input = new HashMap<>();
+        this.variables = new MapVariableResolverFactory(input);
+        this.candidates = new CompiledRule[4][];
+        this.cursors = new int[4];
+        this.flat = new CompiledRule[0];
+        this.flags = new boolean[0];
+        this.selected = new ArrayList<>();
+        this.matches = new ArrayList<>();
+    }
+
+    /**
+     * Associa a configuração e o evento ao contexto, descartando os resultados
+     * memorizados.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     */
+    public void reset(Configuration configuration, Event event) {
+        input.put("configuration", configuration.getAttributes());
+        input.put("event", event.getAttributes());
+        if (++epoch == 0) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Verifica se a condição informada é satisfeita, avaliando-a apenas na
+     * primeira consulta após a associação da configuração e evento correntes.
+     * Caso a ordenação adaptativa esteja habilitada, parte das avaliações é
+     * amostrada.
+     *
+     * @param identifier Identificador da condição.
+     * @return Valor lógico informando se a condição foi satisfeita.
+     */
+    public boolean test(int identifier) {
+        if (stamps[identifier] != epoch) {
+            if (adaptation != null && (++ticks & Adaptation.SAMPLING) == 0) {
+                long start = System.nanoTime();
+                results[identifier] = MVEL.executeExpression(
+                        conditions[identifier], null, variables,
+                        Boolean.class);
+                adaptation.record(identifier, System.nanoTime() - start,
+                        results[identifier]);
+            } else {
+                results[identifier] = MVEL.executeExpression(
+                        conditions[identifier], null, variables,
+                        Boolean.class);
+            }
+            stamps[identifier] = epoch;
+        }
+        return results[identifier];
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import br.usp.poli.lta.cereda.eventengine.util.SlotMap;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.mvel2.MVEL;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * Implementa a forma compilada de uma ação de incremento de um atributo da
+ * configuração por uma constante numérica, nas formas
+ * {@code configuration.k += n}, {@code configuration.k -= n} e
+ * {@code configuration['k'] = configuration['k'] + n}. Caso o mapa de
+ * atributos da configuração seja baseado em um esquema e o atributo contenha
+ * um valor numérico primitivo, o incremento é realizado diretamente sobre a
+ * representação primitiva, sem alocação; caso contrário, a expressão original
+ * é executada.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+class Increment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // constante numérica, sem zeros à esquerda
+    private static final String NUMBER
+            = "(-?(?:0|[1-9]\\d*)(?:\\.\\d+)?)";
+
+    // atribuição composta sobre uma propriedade
+    private static final Pattern COMPOUND = Pattern.compile(
+            "\\s*configuration\\.([A-Za-z_$][\\w$]*)\\s*([+-])=\\s*"
+            + NUMBER + "\\s*;?\\s*");
+
+    // atribuição de uma soma ou subtração
+    // sobre o próprio atributo
+    private static final Pattern ASSIGNMENT = Pattern.compile(
+            "\\s*configuration(?:\\.([A-Za-z_$][\\w$]*)|\\['([^'\\\\]*)'\\]"
+            + "|\\[\"([^\"\\\\]*)\"\\])\\s*=\\s*configuration(?:\\."
+            + "([A-Za-z_$][\\w$]*)|\\['([^'\\\\]*)'\\]|\\[\"([^\"\\\\]*)\"\\])"
+            + "\\s*([+-])\\s*" + NUMBER + "\\s*;?\\s*");
+
+    // chave do atributo
+    private final String key;
+
+    // tipo da constante: inteiro,
+    // inteiro longo ou ponto flutuante
+    private final Class<?> type;
+
+    // incremento, já com o sinal da operação
+    private final long integral;
+    private final double decimal;
+
+    // expressão original compilada
+    private final Serializable expression;
+
+    /**
+     * Construtor.
+     *
+     * @param key Chave do atributo.
+     * @param negate Indica se a operação é uma subtração.
+     * @param number Representação textual da constante.
+     * @param expression Expressão original compilada.
+     */
+    private Increment(String key, boolean negate, String number,
+            Serializable expression) {
+        this.key = key;
+        this.expression = expression;
+        if (number.indexOf('.') != -1) {
+            double value = Double.parseDouble(number);
+            this.type = Double.class;
+            this.decimal = negate ? -value : value;
+            this.integral = 0;
+        } else {
+            long value = Long.parseLong(number);
+            this.type = value == (int) value ? Integer.class : Long.class;
+            this.integral = negate ? -value : value;
+            this.decimal = 0;
+        }
+    }
+
+    /**
+     * Compila a ação informada, reconhecendo as formas de incremento.
+     *
+     * @param action Ação.
+     * @return Ação compilada, potencialmente na forma de incremento.
+     */
+    static Serializable compile(String action) {
+        Serializable expression = MVEL.compileExpression(action);
+        try {
+            Matcher matcher = COMPOUND.matcher(action);
+            if (matcher.matches()) {
+                return new Increment(matcher.group(1),
+                        matcher.group(2).equals("-"), matcher.group(3),
+                        expression);
+            }
+            matcher = ASSIGNMENT.matcher(action);
+            if (matcher.matches()) {
+                String target = first(matcher, 1);
+                if (target.equals(first(matcher, 4))) {
+                    return new Increment(target,
+                            matcher.group(7).equals("-"), matcher.group(8),
+                            expression);
+                }
+            }
+        } catch (NumberFormatException exception) {
+            // constantes fora do intervalo de
+            // inteiros longos mantêm a expressão
+        }
+        return expression;
+    }
+
+    /**
+     * Executa a ação sobre o mapa de variáveis informado.
+     *
+     * @param map Mapa de variáveis, contendo a configuração corrente.
+     * @param variables Fábrica de variáveis.
+     */
+    void execute(Map<String, Object> map, VariableResolverFactory variables) {
+        Object attributes = map.get("configuration");
+        if (attributes instanceof SlotMap && apply((SlotMap) attributes)) {
+            return;
+        }
+        MVEL.executeExpression(expression, variables);
+    }
+
+    /**
+     * Aplica o incremento à representação primitiva do atributo.
+     *
+     * @param attributes Mapa de atributos da configuração.
+     * @return Valor lógico informando se o incremento foi aplicado.
+     */
+    private boolean apply(SlotMap attributes) {
+        if (type == Integer.class) {
+            return attributes.add(key, (int) integral);
+        }
+        if (type == Long.class) {
+            return attributes.add(key, integral);
+        }
+        return attributes.add(key, decimal);
+    }
+
+    /**
+     * Obtém o primeiro grupo válido dentre os três grupos consecutivos
+     * informados.
+     *
+     * @param matcher Correspondência.
+     * @param group Primeiro grupo.
+     * @return Conteúdo do primeiro grupo válido.
+     */
+    private static String first(Matcher matcher, int group) {
+        for (int i = group; i < group + 3; i++) {
+            if (matcher.group(i) != null) {
+                return matcher.group(i);
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import br.usp.poli.lta.cereda.eventengine.model.Configuration;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementa a avaliação paralela das regras candidatas, dividindo-as em
+ * intervalos avaliados por um conjunto de tarefas do tipo fork/join. A
+ * avaliação paralela é utilizada apenas quando o número de regras candidatas
+ * atinge o limiar informado; abaixo dele, o custo de coordenação das tarefas
+ * supera o ganho obtido. As condições das regras devem ser livres de efeitos
+ * colaterais, uma vez que são avaliadas concorrentemente.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class ParallelMatcher {
+
+    // tamanho mínimo de um intervalo
+    // de regras candidatas por tarefa
+    private static final int GRAIN = 16;
+
+    // conjunto de tarefas
+    private final ForkJoinPool pool;
+
+    // limiar de regras candidatas
+    private final int threshold;
+
+    /**
+     * Construtor.
+     *
+     * @param pool Conjunto de tarefas do tipo fork/join.
+     * @param threshold Número mínimo de regras candidatas para que a
+     * avaliação paralela seja utilizada.
+     */
+    public ParallelMatcher(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Obtém o conjunto de tarefas.
+     *
+     * @return Conjunto de tarefas.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Obtém o limiar de regras candidatas.
+     *
+     * @return Limiar de regras candidatas.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Avalia, em paralelo, as regras candidatas preparadas no contexto de
+     * avaliação e preenche, em ordem, a lista de regras aplicáveis.
+     *
+     * @param rules Conjunto de regras.
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação, já preparado.
+     * @param count Número de regras candidatas.
+     * @param matches Lista de regras aplicáveis a ser preenchida ou uma
+     * referência inválida, caso apenas a primeira regra aplicável seja
+     * desejada.
+     * @return Primeira regra aplicável, caso a lista seja uma referência
+     * inválida; caso contrário, uma referência inválida.
+     */
+    CompiledRule scan(RuleSet rules, Configuration configuration,
+            Event event, Evaluation evaluation, int count,
+            List<CompiledRule> matches) {
+
+        // obtém as regras candidatas em ordem
+        // e prepara o vetor de resultados
+        CompiledRule[] candidates = rules.getIndex().
+                flatten(evaluation, count);
+        if (evaluation.flags.length < count) {
+            evaluation.flags = new boolean[count];
+        }
+        boolean[] flags = evaluation.flags;
+
+        // no modo de primeira regra aplicável, a
+        // menor posição encontrada interrompe a
+        // avaliação das posições posteriores
+        AtomicInteger best = matches == null
+                ? new AtomicInteger(count) : null;
+        int grain = Math.max(GRAIN, count / (pool.getParallelism() * 4));
+        pool.invoke(new Search(rules, configuration, event, evaluation,
+                candidates, flags, 0, count, grain, best));
+
+        if (best != null) {
+            return best.get() < count ? candidates[best.get()] : null;
+        }
+        for (int i = 0; i < count; i++) {
+            if (flags[i]) {
+                matches.add(candidates[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Implementa a tarefa de avaliação de um intervalo de regras candidatas.
+     */
+    private static final class Search extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // conjunto de regras, configuração
+        // e evento correntes
+        private final transient RuleSet rules;
+        private final transient Configuration configuration;
+        private final transient Event event;
+
+        // contexto no qual a consulta
+        // ao índice foi preparada
+        private final transient Evaluation prepared;
+
+        // regras candidatas e resultados
+        private final transient CompiledRule[] candidates;
+        private final boolean[] flags;
+
+        // intervalo e tamanho mínimo
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        // menor posição aplicável,
+        // potencialmente inválida
+        private final AtomicInteger best;
+
+        /**
+         * Construtor.
+         *
+         * @param rules Conjunto de regras.
+         * @param configuration Configuração corrente.
+         * @param event Evento corrente.
+         * @param prepared Contexto no qual a consulta foi preparada.
+         * @param candidates Regras candidatas.
+         * @param flags Resultados da avaliação.
+         * @param from Posição inicial, inclusiva.
+         * @param to Posição final, exclusiva.
+         * @param grain Tamanho mínimo de um intervalo.
+         * @param best Menor posição aplicável ou uma referência inválida.
+         */
+        Search(RuleSet rules, Configuration configuration, Event event,
+                Evaluation prepared, CompiledRule[] candidates,
+                boolean[] flags, int from, int to, int grain,
+                AtomicInteger best) {
+            this.rules = rules;
+            this.configuration = configuration;
+            this.event = event;
+            this.prepared = prepared;
+            this.candidates = candidates;
+            this.flags = flags;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.best = best;
+        }
+
+        @Override
+        protected void compute() {
+
+            // intervalo posterior a uma
+            // regra aplicável já encontrada
+            if (best != null && from >= best.get()) {
+                return;
+            }
+
+            // divide o intervalo
+            if (to - from > grain) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Search(rules, configuration, event, prepared,
+                        candidates, flags, from, middle, grain, best),
+                        new Search(rules, configuration, event, prepared,
+                                candidates, flags, middle, to, grain, best));
+                return;
+            }
+
+            // avalia o intervalo com o contexto
+            // de avaliação da linha de execução
+            Evaluation evaluation = rules.local();
+            evaluation.reset(configuration, event);
+            for (int i = from; i < to; i++) {
+                if (best != null && i >= best.get()) {
+                    return;
+                }
+                flags[i] = RuleIndex.test(candidates[i], prepared,
+                        evaluation);
+                if (flags[i] && best != null) {
+                    int current;
+                    do {
+                        current = best.get();
+                    } while (i < current && !best.compareAndSet(current, i));
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,434 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementa um índice de discriminação de regras, construído a partir das
+ * condições de igualdade constante. O primeiro nível associa valores de um
+ * atributo do evento a regras candidatas e o segundo nível, valores de um
+ * atributo da configuração; apenas as condições restantes das regras
+ * candidatas são avaliadas.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class RuleIndex {
+
+    // marcador de valor ausente, que
+    // não corresponde a nenhuma entrada
+    private static final Object ABSENT = new Object();
+
+    // marcador de consulta impossível,
+    // exigindo a avaliação de todas as
+    // regras do nível corrente
+    private static final Object ANY = new Object();
+
+    // chaves dos atributos indexados
+    private final String eventKey;
+    private final String configurationKey;
+
+    // tipos normalizados dos valores
+    // constantes de cada nível
+    private final Class<?> eventKind;
+    private final Class<?> configurationKind;
+
+    // primeiro nível, organizado pelos
+    // valores do atributo do evento
+    private final Map<Object, Level> byEvent;
+
+    // regras sem igualdade sobre o
+    // atributo indexado do evento
+    private final Level anyEvent;
+
+    // todas as regras, organizadas apenas
+    // pelo atributo da configuração
+    private final Level all;
+
+    /**
+     * Construtor.
+     *
+     * @param rules Lista de regras compiladas, em ordem.
+     */
+    public RuleIndex(List<CompiledRule> rules) {
+
+        // reconhece as igualdades constantes
+        // de cada regra e contabiliza as
+        // chaves mais frequentes
+        List<Equality[]> equalities = new ArrayList<>(rules.size());
+        Map<String, Integer> eventKeys = new HashMap<>();
+        Map<String, Integer> configurationKeys = new HashMap<>();
+        for (CompiledRule rule : rules) {
+            String[] sources = rule.getSources();
+            Equality[] elements = new Equality[sources.length];
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < sources.length; i++) {
+                elements[i] = Equality.parse(sources[i]);
+                if (elements[i] != null && seen.add(elements[i].getSource()
+                        + "." + elements[i].getKey())) {
+                    (elements[i].isEvent() ? eventKeys : configurationKeys).
+                            merge(elements[i].getKey(), 1, Integer::sum);
+                }
+            }
+            equalities.add(elements);
+        }
+        eventKey = frequent(eventKeys);
+        configurationKey = frequent(configurationKeys);
+
+        // distribui as regras nos níveis
+        // do índice, registrando as posições
+        // das condições garantidas
+        byEvent = new HashMap<>();
+        anyEvent = new Level();
+        all = new Level();
+        Set<Class<?>> eventKinds = new HashSet<>();
+        Set<Class<?>> configurationKinds = new HashSet<>();
+        for (int i = 0; i < rules.size(); i++) {
+            CompiledRule rule = rules.get(i);
+            Equality[] elements = equalities.get(i);
+            int ep = position(elements, true, eventKey);
+            int cp = position(elements, false, configurationKey);
+            rule.index(ep, cp);
+            Object cv = cp == -1 ? null : elements[cp].getValue();
+            if (cv != null) {
+                configurationKinds.add(cv.getClass());
+            }
+            if (ep == -1) {
+                anyEvent.add(rule, cv);
+            } else {
+                Object ev = elements[ep].getValue();
+                eventKinds.add(ev.getClass());
+                byEvent.computeIfAbsent(ev, (Object key) -> new Level()).
+                        add(rule, cv);
+            }
+            all.add(rule, cv);
+        }
+        byEvent.values().forEach(Level::seal);
+        anyEvent.seal();
+        all.seal();
+        eventKind = eventKinds.size() == 1
+                ? eventKinds.iterator().next() : null;
+        configurationKind = configurationKinds.size() == 1
+                ? configurationKinds.iterator().next() : null;
+    }
+
+    /**
+     * Consulta os níveis do índice e prepara, no contexto de avaliação, as
+     * listas de regras candidatas para a configuração e evento informados.
+     *
+     * @param configuration Atributos da configuração.
+     * @param event Atributos do evento.
+     * @param evaluation Contexto de avaliação.
+     * @return Número de regras candidatas.
+     */
+    public int prepare(Map<String, Object> configuration,
+            Map<String, Object> event, Evaluation evaluation) {
+
+        // consulta o primeiro nível
+        Object ev = probe(event, eventKey, eventKind);
+        boolean eventExact = ev != ANY;
+        Level first = eventExact ? byEvent.get(ev) : all;
+        Level second = eventExact ? anyEvent : null;
+
+        // consulta o segundo nível
+        Object cv = probe(configuration, configurationKey,
+                configurationKind);
+        boolean configurationExact = cv != ANY;
+        CompiledRule[][] lists = evaluation.candidates;
+        int size = 0;
+        size = candidates(first, cv, configurationExact, lists, size);
+        size = candidates(second, cv, configurationExact, lists, size);
+
+        // registra as listas e reinicia
+        // seus respectivos cursores
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            evaluation.cursors[i] = 0;
+            count = count + lists[i].length;
+        }
+        evaluation.size = size;
+        evaluation.eventExact = eventExact;
+        evaluation.configurationExact = configurationExact;
+        return count;
+    }
+
+    /**
+     * Percorre, em ordem, as regras candidatas preparadas no contexto de
+     * avaliação, avaliando suas condições restantes.
+     *
+     * @param evaluation Contexto de avaliação, já preparado.
+     * @param matches Lista de regras aplicáveis a ser preenchida ou uma
+     * referência inválida, caso apenas a primeira regra aplicável seja
+     * desejada.
+     * @return Primeira regra aplicável, caso a lista seja uma referência
+     * inválida; caso contrário, uma referência inválida.
+     */
+    CompiledRule scan(Evaluation evaluation, List<CompiledRule> matches) {
+        CompiledRule candidate;
+        while ((candidate = next(evaluation)) != null) {
+            if (test(candidate, evaluation, evaluation)) {
+                if (matches == null) {
+                    return candidate;
+                }
+                matches.add(candidate);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copia, em ordem, as regras candidatas preparadas no contexto de
+     * avaliação para o vetor auxiliar do contexto.
+     *
+     * @param evaluation Contexto de avaliação, já preparado.
+     * @param count Número de regras candidatas.
+     * @return Vetor auxiliar contendo as regras candidatas.
+     */
+    CompiledRule[] flatten(Evaluation evaluation, int count) {
+        if (evaluation.flat.length < count) {
+            evaluation.flat = new CompiledRule[count];
+        }
+        CompiledRule candidate;
+        for (int i = 0; (candidate = next(evaluation)) != null; i++) {
+            evaluation.flat[i] = candidate;
+        }
+        return evaluation.flat;
+    }
+
+    /**
+     * Verifica se as condições restantes da regra candidata são satisfeitas,
+     * ignorando as condições garantidas pela consulta preparada.
+     *
+     * @param candidate Regra candidata.
+     * @param prepared Contexto de avaliação no qual a consulta foi preparada.
+     * @param evaluation Contexto de avaliação das condições.
+     * @return Valor lógico indicando se a regra é aplicável.
+     */
+    static boolean test(CompiledRule candidate, Evaluation prepared,
+            Evaluation evaluation) {
+        return candidate.matches(evaluation,
+                prepared.eventExact ? candidate.getEventPosition() : -1,
+                prepared.configurationExact
+                        ? candidate.getConfigurationPosition() : -1);
+    }
+
+    /**
+     * Obtém a próxima regra candidata, na ordem original das regras,
+     * intercalando as listas preparadas no contexto de avaliação.
+     *
+     * @param evaluation Contexto de avaliação, já preparado.
+     * @return Próxima regra candidata ou uma referência inválida, caso não
+     * existam mais regras candidatas.
+     */
+    private static CompiledRule next(Evaluation evaluation) {
+        CompiledRule[][] lists = evaluation.candidates;
+        int[] cursors = evaluation.cursors;
+        int chosen = -1;
+        CompiledRule candidate = null;
+        for (int i = 0; i < evaluation.size; i++) {
+            if (cursors[i] < lists[i].length) {
+                CompiledRule rule = lists[i][cursors[i]];
+                if (candidate == null
+                        || rule.getOrdinal() < candidate.getOrdinal()) {
+                    candidate = rule;
+                    chosen = i;
+                }
+            }
+        }
+        if (candidate != null) {
+            cursors[chosen]++;
+        }
+        return candidate;
+    }
+
+    /**
+     * Adiciona as listas de regras candidatas de um nível do índice.
+     *
+     * @param level Nível do índice, potencialmente inválido.
+     * @param value Valor de consulta da configuração.
+     * @param exact Indica se a consulta da configuração é exata.
+     * @param lists Listas de regras candidatas.
+     * @param size Número corrente de listas.
+     * @return Novo número de listas.
+     */
+    private static int candidates(Level level, Object value, boolean exact,
+            CompiledRule[][] lists, int size) {
+        if (level != null) {
+            if (exact) {
+                CompiledRule[] list = level.byConfiguration.get(value);
+                if (list != null) {
+                    lists[size++] = list;
+                }
+                lists[size++] = level.anyConfiguration;
+            } else {
+                lists[size++] = level.all;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Obtém a chave indexada do evento.
+     *
+     * @return Chave indexada do evento ou uma referência inválida.
+     */
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    /**
+     * Obtém a chave indexada da configuração.
+     *
+     * @return Chave indexada da configuração ou uma referência inválida.
+     */
+    public String getConfigurationKey() {
+        return configurationKey;
+    }
+
+    /**
+     * Obtém o tipo dos valores constantes comparados à chave indexada da
+     * configuração, caso seja único.
+     *
+     * @return Tipo dos valores constantes ou uma referência inválida, caso
+     * não exista um tipo único.
+     */
+    public Class<?> getConfigurationKind() {
+        return configurationKind;
+    }
+
+    /**
+     * Determina o valor de consulta de um nível do índice.
+     *
+     * @param attributes Atributos consultados.
+     * @param key Chave indexada.
+     * @param kind Tipo normalizado dos valores constantes do nível.
+     * @return Valor normalizado, marcador de valor ausente ou marcador de
+     * consulta impossível.
+     */
+    private static Object probe(Map<String, Object> attributes, String key,
+            Class<?> kind) {
+        if (key == null || kind == null) {
+            return ANY;
+        }
+        Object value = attributes.get(key);
+        if (value == null) {
+            return ABSENT;
+        }
+        value = Equality.normalize(value);
+        return value != null && value.getClass() == kind ? value : ANY;
+    }
+
+    /**
+     * Obtém a chave mais frequente.
+     *
+     * @param keys Mapa de frequências.
+     * @return Chave mais frequente ou uma referência inválida.
+     */
+    private static String frequent(Map<String, Integer> keys) {
+        return keys.entrySet().stream().max(Map.Entry.comparingByValue()).
+                map(Map.Entry::getKey).orElse(null);
+    }
+
+    /**
+     * Obtém a posição da igualdade sobre a chave informada.
+     *
+     * @param elements Igualdades reconhecidas da regra.
+     * @param event Indica se o atributo pertence ao evento.
+     * @param key Chave indexada.
+     * @return Posição da igualdade ou -1, caso não exista.
+     */
+    private static int position(Equality[] elements, boolean event,
+            String key) {
+        for (int i = 0; key != null && i < elements.length; i++) {
+            if (elements[i] != null && elements[i].isEvent() == event
+                    && elements[i].getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Implementa um nível do índice, organizado pelos valores do atributo
+     * indexado da configuração.
+     */
+    private static class Level {
+
+        // regras organizadas pelo valor
+        // do atributo da configuração
+        private final Map<Object, CompiledRule[]> byConfiguration
+                = new HashMap<>();
+
+        // regras sem igualdade sobre o
+        // atributo da configuração
+        private CompiledRule[] anyConfiguration;
+
+        // todas as regras do nível
+        private CompiledRule[] all;
+
+        // listas utilizadas durante
+        // a construção do nível
+        private Map<Object, List<CompiledRule>> building = new HashMap<>();
+        private List<CompiledRule> remaining = new ArrayList<>();
+        private List<CompiledRule> everything = new ArrayList<>();
+
+        /**
+         * Adiciona uma regra ao nível. As regras devem ser adicionadas em
+         * ordem.
+         *
+         * @param rule Regra compilada.
+         * @param value Valor constante da configuração ou uma referência
+         * inválida.
+         */
+        private void add(CompiledRule rule, Object value) {
+            if (value == null) {
+                remaining.add(rule);
+            } else {
+                building.computeIfAbsent(value,
+                        (Object key) -> new ArrayList<>()).add(rule);
+            }
+            everything.add(rule);
+        }
+
+        /**
+         * Encerra a construção do nível, convertendo as listas em vetores.
+         */
+        private void seal() {
+            building.forEach((Object key, List<CompiledRule> list)
+                    -> byConfiguration.put(key,
+                            list.toArray(new CompiledRule[0])));
+            anyConfiguration = remaining.toArray(new CompiledRule[0]);
+            all = everything.toArray(new CompiledRule[0]);
+            building = null;
+            remaining = null;
+            everything = null;
+        }
+
+    }
+
+}
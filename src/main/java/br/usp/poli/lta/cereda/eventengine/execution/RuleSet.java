@@ -0,0 +1,395 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import br.usp.poli.lta.cereda.eventengine.model.Configuration;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.Rule;
+import br.usp.poli.lta.cereda.eventengine.util.Schema;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementa a forma compilada de um conjunto de regras, construída uma única
+ * vez quando as regras são atribuídas ao motor de eventos. As regras, suas
+ * formas compiladas, a rede de condições e o índice de discriminação são
+ * imutáveis. O conjunto mantém, contudo, estado mutável relativo à ordenação
+ * adaptativa das condições: as estatísticas de custo e aprovação das
+ * condições, a ordem de avaliação das condições de cada regra (e a indicação
+ * de que a ordem original deve ser mantida) e a habilitação da ordenação
+ * adaptativa. Esse estado é atualizado por meio de campos voláteis e
+ * estruturas atômicas e afeta apenas a ordem de avaliação das condições,
+ * nunca o resultado da avaliação das regras.
+ *
+ * <p>O conjunto de regras é seguro entre linhas de execução e pode ser
+ * compartilhado por vários motores de eventos, cada qual com seu próprio
+ * contexto de avaliação; nesse caso, as estatísticas da ordenação adaptativa
+ * são acumuladas em conjunto, e sua habilitação ou desabilitação afeta todos
+ * os motores.</p>
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class RuleSet {
+
+    // cópia da coleção original de regras
+    private final Collection<Rule> rules;
+
+    // lista de regras compiladas, na
+    // ordem de iteração da coleção
+    private final List<CompiledRule> compiled;
+
+    // mapa das regras originais
+    // para as regras compiladas
+    private final Map<Rule, CompiledRule> lookup;
+
+    // rede de condições distintas
+    private final ConditionNetwork network;
+
+    // índice de discriminação das regras
+    private final RuleIndex index;
+
+    // esquema das chaves referenciadas
+    // pelas condições e ações das regras
+    private final Schema schema;
+
+    // indica se todas as regras são isoladas
+    private final boolean isolated;
+
+    // contextos de avaliação por linha de
+    // execução, utilizados na avaliação paralela
+    private final ThreadLocal<Evaluation> local;
+
+    // ordenação adaptativa das condições
+    // e indicador de sua habilitação
+    private final Adaptation adaptation;
+    private volatile boolean adaptive;
+
+    /**
+     * Construtor, mantendo a ordem de iteração da coleção de regras.
+     *
+     * @param rules Coleção de regras a ser compilada.
+     */
+    public RuleSet(Collection<Rule> rules) {
+        this(rules, null);
+    }
+
+    /**
+     * Construtor. As regras são ordenadas de forma estável de acordo com o
+     * comparador informado; caso o comparador seja uma referência inválida, a
+     * ordem de iteração da coleção é mantida.
+     *
+     * @param rules Coleção de regras a ser compilada.
+     * @param comparator Comparador de regras, potencialmente inválido.
+     */
+    public RuleSet(Collection<Rule> rules, Comparator<Rule> comparator) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        List<Rule> ordered = new ArrayList<>(rules);
+        if (comparator != null) {
+            ordered.sort(comparator);
+        }
+        List<CompiledRule> list = new ArrayList<>(rules.size());
+        this.lookup = new IdentityHashMap<>();
+        this.network = new ConditionNetwork();
+        ordered.forEach((Rule rule) -> {
+            CompiledRule element = new CompiledRule(rule, list.size(),
+                    network);
+            list.add(element);
+            lookup.put(rule, element);
+        });
+        this.compiled = Collections.unmodifiableList(list);
+        this.index = new RuleIndex(compiled);
+        this.schema = Schema.of(ordered);
+        this.isolated = compiled.stream().allMatch(CompiledRule::isIsolated);
+        this.local = ThreadLocal.withInitial(network::evaluation);
+        this.adaptation = new Adaptation(network);
+        this.adaptive = true;
+    }
+
+    /**
+     * Verifica se a ordenação adaptativa das condições está habilitada.
+     *
+     * @return Valor lógico informando se a ordenação adaptativa está
+     * habilitada.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Habilita ou desabilita a ordenação adaptativa das condições. Quando
+     * habilitada (o padrão), o custo e a taxa de aprovação das condições são
+     * amostrados e, periodicamente, as condições de cada regra livres de
+     * efeitos colaterais são reordenadas, das mais baratas e seletivas para as
+     * demais; o resultado da avaliação das regras não é alterado. Quando
+     * desabilitada, a ordem original das condições é restaurada.
+     *
+     * @param adaptive Valor lógico indicando se a ordenação adaptativa está
+     * habilitada.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) {
+            compiled.forEach((CompiledRule rule) -> rule.reorder(null));
+        }
+    }
+
+    /**
+     * Obtém a coleção original de regras.
+     *
+     * @return Coleção original de regras.
+     */
+    public Collection<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Obtém a lista de regras compiladas.
+     *
+     * @return Lista de regras compiladas.
+     */
+    public List<CompiledRule> getCompiledRules() {
+        return compiled;
+    }
+
+    /**
+     * Verifica se todas as regras do conjunto são isoladas, isto é, se suas
+     * condições e ações alteram a configuração apenas por meio de seus
+     * atributos de primeiro nível.
+     *
+     * @return Valor lógico informando se todas as regras são isoladas.
+     */
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    /**
+     * Obtém a forma compilada da regra informada. Caso a regra não pertença
+     * ao conjunto (por exemplo, uma regra fornecida pela resolução de regras),
+     * ela é compilada neste momento.
+     *
+     * @param rule Regra original.
+     * @return Forma compilada da regra.
+     */
+    public CompiledRule compiled(Rule rule) {
+        CompiledRule element = lookup.get(rule);
+        return element != null ? element
+                : new CompiledRule(rule, -1, new ConditionNetwork());
+    }
+
+    /**
+     * Obtém a rede de condições distintas.
+     *
+     * @return Rede de condições distintas.
+     */
+    public ConditionNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Cria um novo contexto de avaliação para o conjunto de regras.
+     *
+     * @return Novo contexto de avaliação.
+     */
+    public Evaluation evaluation() {
+        return network.evaluation();
+    }
+
+    /**
+     * Obtém o contexto de avaliação da linha de execução corrente.
+     *
+     * @return Contexto de avaliação da linha de execução corrente.
+     */
+    Evaluation local() {
+        return local.get();
+    }
+
+    /**
+     * Obtém o índice de discriminação das regras.
+     *
+     * @return Índice de discriminação das regras.
+     */
+    public RuleIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Obtém o esquema das chaves da configuração e do evento referenciadas
+     * de forma constante pelas condições e ações das regras. Mapas de
+     * atributos baseados no esquema podem ser obtidos por meio do método
+     * {@link Schema#map()}.
+     *
+     * @return Esquema das chaves referenciadas.
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Obtém, em ordem, as regras aplicáveis à configuração e evento
+     * informados. Apenas as regras candidatas segundo o índice de
+     * discriminação têm suas condições avaliadas.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @return Lista de regras aplicáveis, potencialmente vazia.
+     */
+    public List<Rule> matches(Configuration configuration, Event event) {
+        return matches(configuration, event, evaluation());
+    }
+
+    /**
+     * Obtém, em ordem, as regras aplicáveis à configuração e evento
+     * informados, utilizando o contexto de avaliação informado. Cada condição
+     * distinta é avaliada no máximo uma vez.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação.
+     * @return Lista de regras aplicáveis, potencialmente vazia, válida até a
+     * próxima consulta com o mesmo contexto de avaliação.
+     */
+    public List<Rule> matches(Configuration configuration, Event event,
+            Evaluation evaluation) {
+        return matches(configuration, event, evaluation, null);
+    }
+
+    /**
+     * Obtém, em ordem, as regras aplicáveis à configuração e evento
+     * informados, utilizando o contexto de avaliação informado. Caso o número
+     * de regras candidatas atinja o limiar da avaliação paralela, as regras
+     * candidatas são avaliadas em paralelo.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação.
+     * @param matcher Avaliação paralela, potencialmente inválida.
+     * @return Lista de regras aplicáveis, potencialmente vazia, válida até a
+     * próxima consulta com o mesmo contexto de avaliação.
+     */
+    public List<Rule> matches(Configuration configuration, Event event,
+            Evaluation evaluation, ParallelMatcher matcher) {
+        List<CompiledRule> selected = select(configuration, event,
+                evaluation, matcher);
+        List<Rule> matches = evaluation.matches;
+        matches.clear();
+        for (int i = 0; i < selected.size(); i++) {
+            matches.add(selected.get(i).getRule());
+        }
+        return matches;
+    }
+
+    /**
+     * Obtém, em ordem, as formas compiladas das regras aplicáveis à
+     * configuração e evento informados. Caso o número de regras candidatas
+     * atinja o limiar da avaliação paralela, as regras candidatas são
+     * avaliadas em paralelo.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação.
+     * @param matcher Avaliação paralela, potencialmente inválida.
+     * @return Lista de regras compiladas aplicáveis, potencialmente vazia,
+     * válida até a próxima consulta com o mesmo contexto de avaliação.
+     */
+    public List<CompiledRule> select(Configuration configuration,
+            Event event, Evaluation evaluation, ParallelMatcher matcher) {
+        adapt(evaluation);
+        evaluation.reset(configuration, event);
+        List<CompiledRule> selected = evaluation.selected;
+        selected.clear();
+        int count = index.prepare(configuration.getAttributes(),
+                event.getAttributes(), evaluation);
+        if (matcher != null && count >= matcher.getThreshold()) {
+            matcher.scan(this, configuration, event, evaluation, count,
+                    selected);
+        } else {
+            index.scan(evaluation, selected);
+        }
+        return selected;
+    }
+
+    /**
+     * Obtém a primeira regra, na ordem do conjunto, aplicável à configuração e
+     * evento informados. As condições e regras restantes não são avaliadas.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação.
+     * @return Primeira regra aplicável ou uma referência inválida, caso não
+     * exista regra aplicável.
+     */
+    public CompiledRule first(Configuration configuration, Event event,
+            Evaluation evaluation) {
+        return first(configuration, event, evaluation, null);
+    }
+
+    /**
+     * Obtém a primeira regra, na ordem do conjunto, aplicável à configuração e
+     * evento informados. Caso o número de regras candidatas atinja o limiar
+     * da avaliação paralela, as regras candidatas são avaliadas em paralelo e
+     * as regras posteriores à primeira regra aplicável encontrada deixam de
+     * ser avaliadas.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param evaluation Contexto de avaliação.
+     * @param matcher Avaliação paralela, potencialmente inválida.
+     * @return Primeira regra aplicável ou uma referência inválida, caso não
+     * exista regra aplicável.
+     */
+    public CompiledRule first(Configuration configuration, Event event,
+            Evaluation evaluation, ParallelMatcher matcher) {
+        adapt(evaluation);
+        evaluation.reset(configuration, event);
+        int count = index.prepare(configuration.getAttributes(),
+                event.getAttributes(), evaluation);
+        if (matcher != null && count >= matcher.getThreshold()) {
+            return matcher.scan(this, configuration, event, evaluation,
+                    count, null);
+        }
+        return index.scan(evaluation, null);
+    }
+
+    /**
+     * Associa a ordenação adaptativa ao contexto de avaliação informado e,
+     * periodicamente, reordena as condições das regras.
+     *
+     * @param evaluation Contexto de avaliação.
+     */
+    private void adapt(Evaluation evaluation) {
+        if (adaptive) {
+            evaluation.adaptation = adaptation;
+            if ((++evaluation.events & Adaptation.PERIOD) == 0) {
+                adaptation.reorder(compiled);
+            }
+        } else {
+            evaluation.adaptation = null;
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.execution;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementa um mapa de atributos sobreposto a um mapa base, que não é
+ * alterado. As alterações são mantidas localmente e as chaves consultadas são
+ * registradas, de tal modo que os conjuntos de leitura e escrita de uma
+ * transformação especulativa possam ser validados e a transformação,
+ * efetivada posteriormente sobre o mapa base. As operações que dependem de
+ * todos os atributos, como a obtenção do número de elementos ou a iteração,
+ * registram a leitura de todas as chaves.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class TrackingMap extends AbstractMap<String, Object> {
+
+    // mapa base, apenas consultado
+    private final Map<String, Object> base;
+
+    // atributos alterados localmente
+    private final Map<String, Object> writes;
+
+    // chaves removidas localmente
+    private final Set<String> removals;
+
+    // chaves consultadas
+    private final Set<Object> reads;
+
+    // indica se todas as chaves foram
+    // consultadas ou removidas
+    private boolean readAll;
+    private boolean cleared;
+
+    /**
+     * Construtor.
+     *
+     * @param base Mapa base.
+     */
+    public TrackingMap(Map<String, Object> base) {
+        this.base = base;
+        this.writes = new HashMap<>();
+        this.removals = new HashSet<>();
+        this.reads = new HashSet<>();
+    }
+
+    /**
+     * Obtém o valor associado à chave informada, registrando sua leitura.
+     *
+     * @param key Chave.
+     * @return Valor associado à chave ou uma referência inválida.
+     */
+    @Override
+    public Object get(Object key) {
+        reads.add(key);
+        return peek(key);
+    }
+
+    /**
+     * Verifica se o mapa contém a chave informada, registrando sua leitura.
+     *
+     * @param key Chave.
+     * @return Valor lógico informando se o mapa contém a chave.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        reads.add(key);
+        if (writes.containsKey(key)) {
+            return true;
+        }
+        return !cleared && !removals.contains(key) && base.containsKey(key);
+    }
+
+    /**
+     * Associa o valor à chave informada, localmente.
+     *
+     * @param key Chave.
+     * @param value Valor.
+     * @return Valor anteriormente associado à chave.
+     */
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = peek(key);
+        writes.put(key, value);
+        removals.remove(key);
+        return previous;
+    }
+
+    /**
+     * Remove a chave informada, localmente.
+     *
+     * @param key Chave.
+     * @return Valor anteriormente associado à chave.
+     */
+    @Override
+    public Object remove(Object key) {
+        Object previous = peek(key);
+        if (key instanceof String) {
+            writes.remove(key);
+            removals.add((String) key);
+        }
+        return previous;
+    }
+
+    /**
+     * Remove todos os atributos, localmente.
+     */
+    @Override
+    public void clear() {
+        writes.clear();
+        removals.clear();
+        cleared = true;
+    }
+
+    /**
+     * Obtém o número de atributos, registrando a leitura de todas as chaves.
+     *
+     * @return Número de atributos.
+     */
+    @Override
+    public int size() {
+        return entrySet().size();
+    }
+
+    /**
+     * Obtém uma visão imutável dos atributos, registrando a leitura de todas
+     * as chaves.
+     *
+     * @return Conjunto de atributos.
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        readAll = true;
+        Map<String, Object> merged = cleared ? new HashMap<>()
+                : new HashMap<>(base);
+        removals.forEach(merged::remove);
+        merged.putAll(writes);
+        return Collections.unmodifiableMap(merged).entrySet();
+    }
+
+    /**
+     * Verifica se as leituras registradas dependem das chaves informadas.
+     *
+     * @param keys Chaves alteradas.
+     * @param all Valor lógico indicando se todas as chaves foram alteradas.
+     * @return Valor lógico indicando se existe dependência.
+     */
+    public boolean dependsOn(Set<Object> keys, boolean all) {
+        if (all) {
+            return readAll || !reads.isEmpty();
+        }
+        if (keys.isEmpty()) {
+            return false;
+        }
+        if (readAll) {
+            return true;
+        }
+        for (Object key : reads) {
+            if (keys.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Efetiva as alterações locais no mapa informado, registrando as chaves
+     * alteradas.
+     *
+     * @param target Mapa de destino.
+     * @param keys Conjunto de chaves alteradas, a ser atualizado.
+     * @return Valor lógico indicando se todas as chaves foram alteradas.
+     */
+    public boolean commit(Map<String, Object> target, Set<Object> keys) {
+        if (cleared) {
+            target.clear();
+        }
+        for (String key : removals) {
+            target.remove(key);
+            keys.add(key);
+        }
+        for (Map.Entry<String, Object> entry : writes.entrySet()) {
+            target.put(entry.getKey(), entry.getValue());
+            keys.add(entry.getKey());
+        }
+        return cleared;
+    }
+
+    /**
+     * Obtém o valor associado à chave, sem registrar sua leitura.
+     *
+     * @param key Chave.
+     * @return Valor associado à chave ou uma referência inválida.
+     */
+    private Object peek(Object key) {
+        if (writes.containsKey(key)) {
+            return writes.get(key);
+        }
+        return cleared || removals.contains(key) ? null : base.get(key);
+    }
+
+}
@@ -22,6 +22,7 @@ package br.usp.poli.lta.cereda.eventengine.execution;
 
 import br.usp.poli.lta.cereda.eventengine.model.Configuration;
 import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,7 +37,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
  * Transformador de configurações.
  *
  * @author Paulo Roberto Massa Cereda
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public class Transformer {
@@ -45,12 +46,21 @@ public class Transformer {
     private Configuration configuration;
 
     // evento a ser analisado
-    private final Event event;
+    private Event event;
 
     // coleção de ações a serem aplicadas
     // sobre a configuração corrente
     private final Collection<String> actions;
 
+    // ações compiladas, potencialmente
+    // vazias no modo interpretado
+    private Serializable[] compiled;
+
+    // fábrica de variáveis de longa
+    // duração, contendo métodos e o
+    // ambiente de execução
+    private final VariableResolverFactory base;
+
     // lista de eventos de saída
     private List<Event> outputEvents;
     
@@ -62,6 +72,15 @@ public class Transformer {
     // adicionais
     private Map<String, Object> methods;
 
+    // mapa e fábrica de variáveis
+    // reutilizados entre transformações
+    // no modo de ações compiladas
+    private Map<String, Object> map;
+    private VariableResolverFactory variables;
+
+    // lista reutilizada de eventos de saída
+    private final List<Event> buffer;
+
     /**
      * Construtor.
      *
@@ -81,6 +100,41 @@ public class Transformer {
         this.outputEvents = new ArrayList<>();
         this.environment = environment;
         this.methods = methods;
+        this.compiled = null;
+        this.base = null;
+        this.buffer = outputEvents;
+    }
+
+    /**
+     * Construtor para o modo de ações compiladas com reutilização. O mesmo
+     * transformador pode ser aplicado a sucessivas transformações, por meio do
+     * método {@link #transform(Configuration, Event, Serializable[])}, sem
+     * alocar novas estruturas a cada aplicação.
+     *
+     * @param base Fábrica de variáveis de longa duração.
+     */
+    public Transformer(VariableResolverFactory base) {
+        this.actions = null;
+        this.outputEvents = new ArrayList<>();
+        this.base = base;
+        this.buffer = outputEvents;
+    }
+
+    /**
+     * Realiza a transformação da configuração informada, reutilizando as
+     * estruturas do transformador. A lista de eventos de saída obtida em uma
+     * transformação é válida até a transformação seguinte.
+     *
+     * @param configuration Configuração corrente.
+     * @param event Evento corrente.
+     * @param actions Ações compiladas da regra escolhida.
+     */
+    public void transform(Configuration configuration, Event event,
+            Serializable[] actions) {
+        this.configuration = configuration;
+        this.event = event;
+        this.compiled = actions;
+        execute();
     }
 
     /**
@@ -88,6 +142,13 @@ public class Transformer {
      * e potencialmente gera eventos de saída.
      */
     public void transform() {
+
+        // modo de ações compiladas
+        if (compiled != null) {
+            execute();
+            return;
+        }
+
         Map<String, Object> map = new HashMap<>();
         map.put("configuration", configuration.getAttributes());
         map.put("event", event.getAttributes());
@@ -110,6 +171,56 @@ public class Transformer {
                 getVariableResolver("output").getValue();
     }
 
+    /**
+     * Executa as ações compiladas, associando apenas configuração, evento e
+     * eventos de saída à fábrica de variáveis de longa duração.
+     */
+    private void execute() {
+
+        // o mapa e a fábrica de variáveis
+        // são criados apenas na primeira
+        // transformação ou após a criação
+        // de variáveis locais pelas ações
+        if (variables == null) {
+            map = new HashMap<>();
+            variables = new MapVariableResolverFactory(map, base);
+        }
+
+        buffer.clear();
+        map.put("configuration", configuration.getAttributes());
+        map.put("event", event.getAttributes());
+        map.put("output", buffer);
+
+        // ações de incremento são aplicadas
+        // diretamente sobre atributos primitivos
+        for (Serializable action : compiled) {
+            if (action instanceof Increment) {
+                ((Increment) action).execute(map, variables);
+            } else {
+                MVEL.executeExpression(action, variables);
+            }
+        }
+
+        // uma nova configuração é criada apenas
+        // se as ações substituíram o mapa de
+        // atributos da configuração corrente
+        Map<String, Object> attributes
+                = (Map<String, Object>) map.get("configuration");
+        if (attributes != configuration.getAttributes()) {
+            configuration = new Configuration();
+            configuration.setAttributes(attributes);
+        }
+
+        outputEvents = (List<Event>) map.get("output");
+
+        // variáveis locais criadas pelas ações
+        // não devem ser visíveis na próxima
+        // transformação
+        if (map.size() != 3) {
+            variables = null;
+        }
+    }
+
     /**
      * Obtém a configuração corrente, potencialmente transformada.
      *
@@ -0,0 +1,99 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.model;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Representa a falha no consumo em lote de eventos, informando a posição do
+ * evento cuja avaliação falhou. Os eventos anteriores foram consumidos, o
+ * evento da posição informada pode ter sido parcialmente transformado e os
+ * eventos posteriores não foram analisados, podendo ser submetidos novamente
+ * a partir da posição seguinte.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class BatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    // lista de eventos do lote,
+    // potencialmente inválida
+    private final transient List<Event> events;
+
+    // posição do evento com falha
+    private final int index;
+
+    // eventos consumidos antes da falha
+    private final BitSet result;
+
+    /**
+     * Construtor.
+     *
+     * @param events Lista de eventos do lote ou uma referência inválida, caso
+     * o lote tenha sido informado por meio de um iterador.
+     * @param index Posição do evento cuja avaliação falhou.
+     * @param result Conjunto de bits dos eventos consumidos antes da falha.
+     * @param cause Falha ocorrida na avaliação do evento.
+     */
+    public BatchException(List<Event> events, int index, BitSet result,
+            RuntimeException cause) {
+        super(String.format("O consumo do evento de posição %d do lote"
+                + " falhou.", index), cause);
+        this.events = events;
+        this.index = index;
+        this.result = result;
+    }
+
+    /**
+     * Obtém a lista de eventos do lote, tal como informada ao motor de
+     * eventos.
+     *
+     * @return Lista de eventos do lote ou uma referência inválida, caso o
+     * lote tenha sido informado por meio de um iterador.
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Obtém a posição do evento cuja avaliação falhou.
+     *
+     * @return Posição do evento.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Obtém o conjunto de bits dos eventos consumidos antes da falha.
+     *
+     * @return Conjunto de bits no qual o bit de cada posição indica se o
+     * evento correspondente foi consumido.
+     */
+    public BitSet getResult() {
+        return result;
+    }
+
+}
@@ -20,6 +20,11 @@
  */
 package br.usp.poli.lta.cereda.eventengine.model;
 
+import br.usp.poli.lta.cereda.eventengine.util.PersistentMap;
+import br.usp.poli.lta.cereda.eventengine.util.SlotMap;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Implementa uma configuração do motor de eventos.
  *
@@ -29,6 +34,37 @@ package br.usp.poli.lta.cereda.eventengine.model;
  */
 public class Configuration extends Table {
 
+    /**
+     * Verifica se o mapa de atributos da configuração é persistente.
+     *
+     * @return Valor lógico informando se o mapa de atributos é persistente.
+     */
+    public boolean isPersistent() {
+        return getAttributes() instanceof PersistentMap;
+    }
+
+    /**
+     * Obtém uma cópia independente da configuração. Caso o mapa de atributos
+     * seja persistente, a cópia é obtida em tempo constante por meio da
+     * bifurcação do mapa; caso contrário, todos os atributos são copiados,
+     * mantendo o esquema de mapas baseados em posições.
+     *
+     * @return Cópia independente da configuração.
+     */
+    public Configuration snapshot() {
+        Map<String, Object> attributes = getAttributes();
+        Configuration copy = new Configuration();
+        if (attributes instanceof PersistentMap) {
+            copy.setAttributes(((PersistentMap<String, Object>) attributes)
+                    .fork());
+        } else if (attributes instanceof SlotMap) {
+            copy.setAttributes(((SlotMap) attributes).copy());
+        } else {
+            copy.setAttributes(new HashMap<>(attributes));
+        }
+        return copy;
+    }
+
     /**
      * Retorna a representação textual da configuração.
      *
@@ -20,27 +20,40 @@
  */
 package br.usp.poli.lta.cereda.eventengine.model;
 
-import br.usp.poli.lta.cereda.eventengine.execution.Interpreter;
+import br.usp.poli.lta.cereda.eventengine.execution.CompiledRule;
+import br.usp.poli.lta.cereda.eventengine.execution.Evaluation;
+import br.usp.poli.lta.cereda.eventengine.execution.ParallelMatcher;
+import br.usp.poli.lta.cereda.eventengine.execution.RuleSet;
+import br.usp.poli.lta.cereda.eventengine.execution.TrackingMap;
 import br.usp.poli.lta.cereda.eventengine.execution.Transformer;
 import br.usp.poli.lta.cereda.eventengine.policies.DefaultEventComparator;
 import br.usp.poli.lta.cereda.eventengine.policies.DefaultRuleResolver;
 import br.usp.poli.lta.cereda.eventengine.policies.RuleResolver;
-import br.usp.poli.lta.cereda.eventengine.util.Pair;
+import br.usp.poli.lta.cereda.eventengine.runtime.Backpressure;
+import br.usp.poli.lta.cereda.eventengine.runtime.Stage;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 /**
  * Implementa o motor de eventos.
  *
  * @author Paulo Roberto Massa Cereda
- * @version 1.2
+ * @version 1.3
  * @since 1.0
  */
 public class Engine {
@@ -48,9 +61,17 @@ public class Engine {
     // identificador do motor de eventos
     private final String identifier;
 
-    // configuração e coleção de regras
+    // configuração corrente
     private Configuration configuration;
-    private Collection<Rule> rules;
+
+    // forma compilada da coleção de regras,
+    // substituída atomicamente como um todo
+    private volatile RuleSet ruleSet;
+
+    // contexto de avaliação das condições e
+    // o conjunto de regras ao qual está associado
+    private Evaluation evaluation;
+    private RuleSet bound;
 
     // lista de eventos de saída, potencialmente vazia
     private final List<Event> outputEvents;
@@ -58,19 +79,64 @@ public class Engine {
     // resolução de regras válidas
     private RuleResolver resolver;
 
+    // ordenação das regras, potencialmente
+    // inválida (ordem de inserção)
+    private Comparator<Rule> ruleComparator;
+
+    // indica se apenas a primeira regra
+    // aplicável, em ordem, é considerada
+    private boolean firstMatch;
+
+    // indica se a ordenação adaptativa das
+    // condições é habilitada nas regras
+    // compiladas pelo motor de eventos
+    private boolean adaptive;
+
+    // avaliação paralela das regras
+    // candidatas, potencialmente inválida
+    private ParallelMatcher matcher;
+
+    // conjunto de tarefas do consumo
+    // especulativo, potencialmente inválido,
+    // e número de eventos por janela
+    private ForkJoinPool speculation;
+    private int window;
+
+    // contextos do consumo especulativo
+    // de cada linha de execução
+    private final ThreadLocal<Speculator> speculators;
+
     // comparador de eventos de saída
     private Comparator<Event> outputComparator;
 
+    // destino dos eventos consumidos que não
+    // são mais referenciados pelo motor de
+    // eventos, potencialmente inválido
+    private Consumer<Event> recycler;
+
     // mapa do ambiente de execução
     private Map<String, Object> environment;
 
     // mapa dos métodos
     private Map<String, Object> methods;
 
+    // fábrica de variáveis de longa duração,
+    // contendo os métodos e o ambiente de
+    // execução do motor de eventos
+    private VariableResolverFactory variables;
+
+    // transformação reutilizada entre
+    // os passos computacionais
+    private Transformer transformer;
+
     // motor de eventos para
     // manipulação de eventos de saída
     private Optional<Engine> pipeline;
 
+    // estágio assíncrono de entrega dos
+    // eventos de saída, potencialmente vazio
+    private Optional<Stage> stage;
+
     /**
      * Construtor.
      *
@@ -86,10 +152,18 @@ public class Engine {
         // eventos de saída
         outputEvents = new ArrayList<>();
 
+        // contextos do consumo especulativo,
+        // criados sob demanda
+        speculators = ThreadLocal.withInitial(Speculator::new);
+
         // atribui a resolução padrão de
         // regras ao motor de eventos
         resolver = new DefaultRuleResolver();
 
+        // a ordenação adaptativa das
+        // condições é habilitada por padrão
+        adaptive = true;
+
         // define a comparação padrão de eventos
         // a ser aplicada na lista de eventos de saída
         outputComparator = new DefaultEventComparator();
@@ -102,9 +176,15 @@ public class Engine {
         // contendo os métodos
         methods = new HashMap<>();
 
+        // associa os métodos e o ambiente de
+        // execução à fábrica de variáveis
+        bind();
+
         // define o motor de eventos de
-        // saída como vazio
+        // saída e o estágio assíncrono
+        // como vazios
         pipeline = Optional.empty();
+        stage = Optional.empty();
 
     }
 
@@ -118,12 +198,152 @@ public class Engine {
     }
 
     /**
-     * Define a coleção de regras do motor de eventos.
+     * Define a coleção de regras do motor de eventos. As condições das regras
+     * são compiladas neste momento; alterações posteriores nas regras exigem
+     * uma nova chamada deste método.
      *
      * @param rules Coleção de regras.
      */
     public void setRules(Collection<Rule> rules) {
-        this.rules = rules;
+        RuleSet compiled = new RuleSet(rules, ruleComparator);
+        compiled.setAdaptive(adaptive);
+        setRuleSet(compiled);
+    }
+
+    /**
+     * Define a forma compilada da coleção de regras do motor de eventos. O
+     * conjunto de regras é substituído atomicamente e pode ser definido por
+     * outra linha de execução durante o consumo de eventos: cada consumo, ou
+     * lote de consumo, utiliza integralmente o conjunto de regras vigente no
+     * seu início. O conjunto de regras deve ser construído previamente, fora
+     * da linha de execução do consumo. A ordem de avaliação das condições do
+     * conjunto vigente pode ser alterada pela ordenação adaptativa durante o
+     * consumo (veja {@link RuleSet#setAdaptive(boolean)}), sem alterar as
+     * regras aplicadas.
+     *
+     * @param ruleSet Forma compilada da coleção de regras.
+     */
+    public void setRuleSet(RuleSet ruleSet) {
+        this.ruleSet = ruleSet;
+    }
+
+    /**
+     * Obtém a forma compilada da coleção de regras do motor de eventos.
+     *
+     * @return Forma compilada da coleção de regras.
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * Define a ordenação das regras do motor de eventos. Caso a ordenação seja
+     * uma referência inválida, a ordem de iteração da coleção de regras é
+     * mantida.
+     *
+     * @param ruleComparator Ordenação das regras.
+     */
+    public void setRuleComparator(Comparator<Rule> ruleComparator) {
+        this.ruleComparator = ruleComparator;
+        RuleSet current = ruleSet;
+        if (current != null) {
+            setRules(current.getRules());
+        }
+    }
+
+    /**
+     * Define se apenas a primeira regra aplicável, na ordem das regras, é
+     * considerada. Neste modo, a avaliação é interrompida na primeira regra
+     * cujas condições são satisfeitas e a resolução de regras não é
+     * utilizada.
+     *
+     * @param firstMatch Valor lógico indicando o modo de primeira regra
+     * aplicável.
+     */
+    public void setFirstMatch(boolean firstMatch) {
+        this.firstMatch = firstMatch;
+    }
+
+    /**
+     * Habilita ou desabilita a ordenação adaptativa das condições no conjunto
+     * de regras corrente e nos conjuntos compilados posteriormente por meio
+     * de {@link #setRules(Collection)}. As condições de cada regra livres de
+     * efeitos colaterais são periodicamente reordenadas de acordo com seu
+     * custo e sua taxa de aprovação amostrados, sem alterar o resultado da
+     * avaliação.
+     *
+     * @param adaptive Valor lógico indicando se a ordenação adaptativa está
+     * habilitada.
+     */
+    public void setAdaptiveOrdering(boolean adaptive) {
+        this.adaptive = adaptive;
+        RuleSet current = ruleSet;
+        if (current != null) {
+            current.setAdaptive(adaptive);
+        }
+    }
+
+    /**
+     * Define a avaliação paralela das regras candidatas. Quando o número de
+     * regras candidatas para um evento atinge o limiar informado, suas
+     * condições são avaliadas em paralelo no conjunto de tarefas informado;
+     * a ordem das regras aplicáveis é preservada. Caso o conjunto de tarefas
+     * seja uma referência inválida, a avaliação paralela é desabilitada.
+     *
+     * @param pool Conjunto de tarefas, potencialmente inválido.
+     * @param threshold Número mínimo de regras candidatas.
+     */
+    public void setParallelMatching(ForkJoinPool pool, int threshold) {
+        this.matcher = pool != null
+                ? new ParallelMatcher(pool, threshold) : null;
+    }
+
+    /**
+     * Define o consumo especulativo de eventos em lote. Os eventos de cada
+     * janela são avaliados em paralelo sobre a configuração do início da
+     * janela, registrando as chaves lidas e alteradas por cada evento; as
+     * alterações são então efetivadas em ordem, e os eventos cujas leituras
+     * dependem de alterações efetivadas anteriormente na mesma janela são
+     * reavaliados. Apenas os atributos de primeiro nível da configuração são
+     * rastreados; assim, o consumo especulativo é aplicado somente a
+     * conjuntos de regras isolados (veja {@link RuleSet#isIsolated()}), cujas
+     * condições e ações não alteram os valores armazenados na configuração
+     * (por exemplo, adicionando elementos a uma lista), o evento, o ambiente
+     * de execução ou objetos externos, e os demais conjuntos de regras são
+     * consumidos sequencialmente. Regras não isoladas fornecidas pela
+     * resolução de regras são sempre reavaliadas em ordem. A verificação é
+     * conservadora e textual, de tal modo que métodos ou objetos externos
+     * acessados de forma indireta não são detectados. Caso o conjunto de
+     * tarefas seja uma referência inválida, o consumo especulativo é
+     * desabilitado.
+     *
+     * @param pool Conjunto de tarefas, potencialmente inválido.
+     * @param window Número de eventos por janela.
+     */
+    public void setSpeculation(ForkJoinPool pool, int window) {
+        this.speculation = pool;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Define o destino dos eventos consumidos que não são mais referenciados
+     * pelo motor de eventos, tipicamente a devolução a um conjunto de eventos
+     * reutilizáveis ({@link EventPool#recycle(Event)}, que ignora eventos de
+     * outras origens). Cada evento é encaminhado ao destino imediatamente
+     * após seu consumo, inclusive quando a avaliação falha, exceto quando a
+     * regra aplicada pode reter o mapa de atributos do evento (por exemplo,
+     * na configuração ou em eventos de saída); neste caso, o evento nunca é
+     * encaminhado. O destino é invocado após a efetivação do passo e não deve
+     * lançar exceções. Com o destino definido, os eventos submetidos ao motor
+     * de eventos não devem ser utilizados pelo chamador após o consumo. Caso
+     * o destino seja uma referência inválida, os eventos não são
+     * encaminhados.
+     *
+     * @param recycler Destino dos eventos consumidos, potencialmente
+     * inválido.
+     */
+    public void setRecycler(Consumer<Event> recycler) {
+        this.recycler = recycler;
     }
 
     /**
@@ -168,7 +388,8 @@ public class Engine {
      * @return Coleção de regras do motor de eventos.
      */
     public Collection<Rule> getRules() {
-        return rules;
+        RuleSet current = ruleSet;
+        return current != null ? current.getRules() : null;
     }
 
     /**
@@ -188,62 +409,205 @@ public class Engine {
     }
 
     /**
-     * Calcula a próxima configuração, dados a configuração e evento correntes.
+     * Calcula e atribui a próxima configuração, dados a configuração e evento
+     * correntes. Em regime, a avaliação reutiliza as estruturas do motor de
+     * eventos, de tal modo que apenas os eventos de saída são alocados. Os
+     * eventos de saída gerados são intercalados na lista de eventos de saída,
+     * mas não são encaminhados ao motor subsequente.
      *
      * @param event Evento a ser analisado.
-     * @return Próxima configuração do motor de eventos.
+     * @param rules Forma compilada da coleção de regras.
+     * @param evaluation Contexto de avaliação das condições.
+     * @return Valor lógico indicando se o passo computacional foi realizado.
      */
-    private Pair<Configuration, Boolean> delta(Event event) {
+    private boolean delta(Event event, RuleSet rules,
+            Evaluation evaluation) {
+
+        // o evento consumido deixa de ser
+        // referenciado pelo motor de eventos
+        // ao final do passo, mesmo em caso
+        // de falha
+        CompiledRule rule = null;
+        try {
+
+            // obtém a regra a ser aplicada, dados
+            // a configuração e evento correntes
+            rule = select(configuration, event, rules, evaluation);
+
+            // não há regras a aplicar, a configuração
+            // corrente se mantém e é informado que o
+            // motor de eventos não pôde consumir o
+            // evento corrente
+            if (rule == null) {
+                return false;
+            }
+
+            // efetivamente aplica a transformação,
+            // dados a configuração, evento e conjunto
+            // de ações compiladas da regra correntes,
+            // gerando uma nova configuração para o
+            // motor de eventos (potencialmente a
+            // mesma instância)
+            // no caso de um mapa de atributos
+            // persistente, a transformação é aplicada
+            // a uma bifurcação da configuração, de
+            // tal modo que a configuração anterior
+            // permanece inalterada
+            Configuration current = configuration.isPersistent()
+                    ? configuration.snapshot() : configuration;
+            transformer.transform(current, event, rule.getActions());
+            configuration = transformer.getConfiguration();
+
+            // se existem eventos de saída, estes são
+            // intercalados na lista existente, que se
+            // mantém ordenada de acordo com o comparador
+            // definido
+            List<Event> produced = transformer.getOutputEvents();
+            if (!produced.isEmpty()) {
+                merge(produced);
+            }
+
+            // informa que o passo computacional
+            // foi realizado com sucesso
+            return true;
+        } finally {
+            recycle(event, rule);
+        }
+    }
+
+    /**
+     * Encaminha, em lote, os eventos de saída ao motor de eventos subsequente,
+     * caso exista.
+     */
+    private void forward() {
+
+        // modo assíncrono, no qual os eventos
+        // são entregues ao estágio do motor
+        // subsequente
+        if (stage.isPresent()) {
+            Stage handoff = stage.get();
+            int i = 0;
+            try {
+                for (; i < outputEvents.size(); i++) {
+                    handoff.submit(outputEvents.get(i));
+                }
+            } finally {
+
+                // apenas os eventos efetivamente
+                // entregues são removidos da lista
+                outputEvents.subList(0, i).clear();
+            }
+        } else if (pipeline.isPresent()) {
+
+            // modo síncrono, no qual o motor
+            // subsequente consome o lote na
+            // linha de execução corrente
+            pipeline.get().consumeAll(outputEvents);
+            outputEvents.clear();
+        }
+    }
+
+    /**
+     * Intercala os eventos informados na lista de eventos de saída, mantendo
+     * a ordem definida pelo comparador. O lote é ordenado de forma estável e
+     * cada evento é inserido após os eventos de mesma prioridade já
+     * existentes, de tal modo que o resultado é idêntico à ordenação completa
+     * da lista, sem o custo de reordená-la a cada passo.
+     *
+     * @param batch Lote de eventos de saída.
+     */
+    private void merge(List<Event> batch) {
+
+        // ordena o lote, tipicamente pequeno
+        if (batch.size() > 1) {
+            batch.sort(outputComparator);
+        }
+
+        // caso o primeiro evento do lote não preceda
+        // o último evento existente, basta anexar o
+        // lote ao final da lista (caso do comparador
+        // padrão, no qual todos os eventos têm a
+        // mesma prioridade)
+        int size = outputEvents.size();
+        if (size == 0 || outputComparator.compare(outputEvents.
+                get(size - 1), batch.get(0)) <= 0) {
+            for (int i = 0; i < batch.size(); i++) {
+                outputEvents.add(batch.get(i));
+            }
+            return;
+        }
+
+        // insere cada evento após o último evento
+        // de mesma prioridade, retomando a busca a
+        // partir da inserção anterior
+        int low = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Event event = batch.get(i);
+            int high = outputEvents.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (outputComparator.compare(outputEvents.get(middle),
+                        event) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            outputEvents.add(low++, event);
+        }
+    }
+
+    /**
+     * Seleciona a regra a ser aplicada, dados a configuração e evento
+     * informados.
+     *
+     * @param configuration Configuração a ser analisada.
+     * @param event Evento a ser analisado.
+     * @param rules Forma compilada da coleção de regras.
+     * @param evaluation Contexto de avaliação das condições.
+     * @return Regra a ser aplicada ou uma referência inválida, caso não
+     * existam regras aplicáveis.
+     */
+    private CompiledRule select(Configuration configuration, Event event,
+            RuleSet rules, Evaluation evaluation) {
+
+        // no modo de primeira regra aplicável,
+        // a avaliação é interrompida na primeira
+        // regra cujas condições são satisfeitas
+        if (firstMatch) {
+            return rules.first(configuration, event, evaluation, matcher);
+        }
 
         // analisa quais regras se aplicam, dados
-        // a configuração e eventos correntes
-        Collection<Rule> matches = rules.stream().filter((Rule rule) -> rule.
-                getConditions().stream().allMatch(new Interpreter(configuration,
-                        event)::apply)).collect(Collectors.toList());
-
-        // não há regras a aplicar, a configuração
-        // corrente se mantém e é informado que o
-        // motor de eventos não pôde consumir o
-        // evento corrente
+        // a configuração e eventos correntes,
+        // consultando o índice de regras
+        Collection<Rule> matches = rules.matches(configuration, event,
+                evaluation, matcher);
         if (matches.isEmpty()) {
-            return new Pair<>(configuration, false);
+            return null;
         }
 
         // obtém a regra escolhida de acordo com
         // a resolução de regras definida
-        Rule rule = resolver.select(matches);
-
-        // instancia uma transformação de configuração,
-        // dados a configuração, evento e conjunto de ações
-        // da regra correntes
-        Transformer transformer = new Transformer(configuration,
-                event, rule.getActions(), environment, methods);
-
-        // efetivamente aplica a transformação,
-        // gerando uma nova configuração para
-        // o motor de eventos
-        transformer.transform();
-
-        // se existem eventos de saída, estes são
-        // adicionados à lista existente e ordenados
-        // de acordo com o comparador definido
-        if (!transformer.getOutputEvents().isEmpty()) {
-            outputEvents.addAll(transformer.getOutputEvents());
-            Collections.sort(outputEvents, outputComparator);
-
-            // se existe motor de eventos para
-            // manipulação de eventos de saída,
-            // dispara a avaliação
-            pipeline.ifPresent((Engine engine) -> {
-                outputEvents.forEach(engine::consume);
-                outputEvents.clear();
-            });
-        }
+        return rules.compiled(resolver.select(matches));
+    }
 
-        // retorna a nova configuração e um sinalizador
-        // informando de que o passo computacional foi
-        // realizado com sucesso
-        return new Pair(transformer.getConfiguration(), true);
+    /**
+     * Obtém o contexto de avaliação associado ao conjunto de regras informado,
+     * criando um novo contexto caso o conjunto de regras tenha sido
+     * substituído desde o último consumo. O contexto anterior é descartado,
+     * de tal modo que o conjunto de regras substituído deixa de ser
+     * referenciado pelo motor de eventos.
+     *
+     * @param rules Forma compilada da coleção de regras.
+     * @return Contexto de avaliação associado ao conjunto de regras.
+     */
+    private Evaluation evaluate(RuleSet rules) {
+        if (bound != rules) {
+            evaluation = rules.evaluation();
+            bound = rules;
+        }
+        return evaluation;
     }
 
     /**
@@ -259,15 +623,367 @@ public class Engine {
         // aplica-se a função de delta,
         // utilizando o evento corrente
         // como parâmetro
-        Pair<Configuration, Boolean> pair = delta(event);
+        int size = outputEvents.size();
+        RuleSet rules = ruleSet;
+        boolean result = delta(event, rules, evaluate(rules));
 
-        // atualiza a configuração corrente
-        // (pode, potencialmente, ser a mesma)
-        configuration = pair.getFirst();
+        // se foram gerados eventos de saída,
+        // estes são encaminhados ao motor de
+        // eventos subsequente
+        if (outputEvents.size() != size) {
+            forward();
+        }
 
         // retorna o resultado da aplicação
         // do passo computacional
-        return pair.getSecond();
+        return result;
+    }
+
+    /**
+     * Consome, em ordem, os eventos da lista informada. O contexto de
+     * avaliação é preparado uma única vez para todo o lote e os eventos de
+     * saída são encaminhados ao motor de eventos subsequente apenas ao final
+     * do lote, inclusive em caso de falha.
+     *
+     * @param events Lista de eventos a serem consumidos.
+     * @return Conjunto de bits no qual o bit de cada posição indica se o
+     * evento correspondente foi consumido.
+     * @throws BatchException A avaliação de um evento falhou; os eventos
+     * posteriores não foram analisados.
+     */
+    public BitSet consumeAll(List<Event> events) {
+        BitSet result = new BitSet(events.size());
+        RuleSet rules = ruleSet;
+        Evaluation context = evaluate(rules);
+        int size = outputEvents.size();
+        try {
+            if (speculation != null && events.size() > 1
+                    && rules.isIsolated()) {
+                for (int i = 0; i < events.size(); i += window) {
+                    speculate(events, i, Math.min(events.size(),
+                            i + window), rules, result);
+                }
+            } else {
+                for (int i = 0; i < events.size(); i++) {
+                    try {
+                        if (delta(events.get(i), rules, context)) {
+                            result.set(i);
+                        }
+                    } catch (RuntimeException exception) {
+                        throw new BatchException(events, i, result,
+                                exception);
+                    }
+                }
+            }
+        } finally {
+            if (outputEvents.size() != size) {
+                forward();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Consome, em ordem, os eventos da coleção informada. O contexto de
+     * avaliação é preparado uma única vez para todo o lote e os eventos de
+     * saída são encaminhados ao motor de eventos subsequente apenas ao final
+     * do lote.
+     *
+     * @param events Coleção de eventos a serem consumidos.
+     * @return Conjunto de bits no qual o bit de cada posição indica se o
+     * evento correspondente foi consumido.
+     */
+    public BitSet consumeAll(Iterable<Event> events) {
+        return events instanceof List ? consumeAll((List<Event>) events)
+                : consumeAll(events.iterator());
+    }
+
+    /**
+     * Consome, em ordem, os eventos do iterador informado. O contexto de
+     * avaliação é preparado uma única vez para todo o lote e os eventos de
+     * saída são encaminhados ao motor de eventos subsequente apenas ao final
+     * do lote, inclusive em caso de falha.
+     *
+     * @param events Iterador de eventos a serem consumidos.
+     * @return Conjunto de bits no qual o bit de cada posição indica se o
+     * evento correspondente foi consumido.
+     * @throws BatchException A avaliação de um evento falhou; os eventos
+     * posteriores não foram retirados do iterador.
+     */
+    public BitSet consumeAll(Iterator<Event> events) {
+        BitSet result = new BitSet();
+        RuleSet rules = ruleSet;
+        Evaluation context = evaluate(rules);
+        int size = outputEvents.size();
+        try {
+            for (int i = 0; events.hasNext(); i++) {
+                Event event = events.next();
+                try {
+                    if (delta(event, rules, context)) {
+                        result.set(i);
+                    }
+                } catch (RuntimeException exception) {
+                    throw new BatchException(null, i, result, exception);
+                }
+            }
+        } finally {
+            if (outputEvents.size() != size) {
+                forward();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Consome especulativamente uma janela de eventos. Cada evento é avaliado
+     * em paralelo sobre um mapa sobreposto à configuração do início da
+     * janela; em seguida, em ordem, as alterações de cada evento são
+     * efetivadas, e os eventos cujas leituras dependem de alterações
+     * efetivadas anteriormente, ou cuja avaliação falhou, são reavaliados
+     * sobre a configuração corrente.
+     *
+     * @param batch Lote de eventos.
+     * @param from Posição inicial da janela no lote, inclusiva.
+     * @param to Posição final da janela no lote, exclusiva.
+     * @param rules Forma compilada da coleção de regras.
+     * @param result Conjunto de bits dos eventos consumidos.
+     * @throws BatchException A efetivação de um evento falhou.
+     */
+    private void speculate(List<Event> batch, int from, int to,
+            RuleSet rules, BitSet result) {
+        List<Event> events = batch.subList(from, to);
+
+        // a configuração persistente é bifurcada
+        // uma única vez por janela, de tal modo
+        // que a configuração anterior permanece
+        // inalterada
+        if (configuration.isPersistent()) {
+            configuration = configuration.snapshot();
+        }
+
+        // avalia os eventos em paralelo
+        Attempt[] attempts = new Attempt[events.size()];
+        speculation.invoke(new Speculation(events, configuration.
+                getAttributes(), rules, attempts, 0, events.size()));
+
+        // efetiva as alterações em ordem,
+        // reavaliando os eventos em conflito
+        // o evento deixa de ser referenciado ao
+        // final de sua efetivação, mesmo em caso
+        // de falha na reavaliação, na qual a
+        // regra selecionada é obtida do contexto
+        Set<Object> keys = new HashSet<>();
+        boolean all = false;
+        Speculator speculator = speculators.get();
+        for (int i = 0; i < attempts.length; i++) {
+            Attempt attempt = attempts[i];
+            boolean committed = false;
+            try {
+                if (attempt == null || attempt.replaced
+                        || attempt.map.dependsOn(keys, all)) {
+                    attempt = speculator.attempt(events.get(i),
+                            configuration.getAttributes(), rules, false);
+                }
+                if (attempt.replaced) {
+                    configuration = attempt.configuration;
+                    all = true;
+                } else {
+                    all = attempt.map.commit(configuration.getAttributes(),
+                            keys) || all;
+                }
+                if (attempt.rule != null) {
+                    result.set(from + i);
+                    if (!attempt.outputs.isEmpty()) {
+                        merge(attempt.outputs);
+                    }
+                }
+                committed = true;
+            } catch (RuntimeException exception) {
+                throw new BatchException(batch, from + i, result, exception);
+            } finally {
+                recycle(events.get(i), committed ? attempt.rule
+                        : speculator.selected);
+            }
+        }
+    }
+
+    /**
+     * Encaminha o evento consumido ao destino dos eventos não referenciados,
+     * caso exista e a regra aplicada não possa reter o evento.
+     *
+     * @param event Evento consumido.
+     * @param rule Regra aplicada, potencialmente inválida.
+     */
+    private void recycle(Event event, CompiledRule rule) {
+        if (recycler != null && (rule == null || !rule.isRetaining())) {
+            recycler.accept(event);
+        }
+    }
+
+    /**
+     * Implementa o resultado da avaliação especulativa de um evento.
+     */
+    private static final class Attempt {
+
+        // mapa sobreposto à configuração
+        private final TrackingMap map;
+
+        // configuração resultante
+        private Configuration configuration;
+
+        // regra aplicada, potencialmente inválida
+        private CompiledRule rule;
+
+        // eventos de saída gerados
+        private List<Event> outputs;
+
+        // indica se as ações substituíram
+        // o mapa de atributos
+        private boolean replaced;
+
+        /**
+         * Construtor.
+         *
+         * @param map Mapa sobreposto à configuração.
+         */
+        Attempt(TrackingMap map) {
+            this.map = map;
+            this.outputs = Collections.emptyList();
+        }
+
+    }
+
+    /**
+     * Implementa os contextos de avaliação e transformação do consumo
+     * especulativo de uma linha de execução.
+     */
+    private final class Speculator {
+
+        // contexto de avaliação e o conjunto
+        // de regras ao qual está associado
+        private Evaluation evaluation;
+        private RuleSet rules;
+
+        // transformador e a fábrica de
+        // variáveis da qual foi derivado
+        private Transformer transformer;
+        private VariableResolverFactory source;
+
+        // regra selecionada na última
+        // avaliação, potencialmente inválida
+        private CompiledRule selected;
+
+        /**
+         * Avalia o evento sobre um mapa sobreposto ao mapa base informado,
+         * sem alterá-lo.
+         *
+         * @param event Evento a ser avaliado.
+         * @param base Mapa base de atributos.
+         * @param set Forma compilada da coleção de regras.
+         * @param speculative Indica se a avaliação é especulativa, isto é, se
+         * o mapa base não é a configuração corrente.
+         * @return Resultado da avaliação ou uma referência inválida, caso a
+         * avaliação seja especulativa e a regra selecionada não seja isolada.
+         */
+        Attempt attempt(Event event, Map<String, Object> base, RuleSet set,
+                boolean speculative) {
+            if (rules != set) {
+                evaluation = set.evaluation();
+                rules = set;
+            }
+            if (source != variables) {
+                transformer = new Transformer(factory());
+                source = variables;
+            }
+            selected = null;
+            Attempt attempt = new Attempt(new TrackingMap(base));
+            Configuration view = new Configuration();
+            view.setAttributes(attempt.map);
+            attempt.rule = select(view, event, set, evaluation);
+            selected = attempt.rule;
+            if (speculative && attempt.rule != null
+                    && !attempt.rule.isIsolated()) {
+                return null;
+            }
+            if (attempt.rule != null) {
+                transformer.transform(view, event,
+                        attempt.rule.getActions());
+                attempt.configuration = transformer.getConfiguration();
+                attempt.replaced = attempt.configuration != view;
+                List<Event> produced = transformer.getOutputEvents();
+                if (!produced.isEmpty()) {
+                    attempt.outputs = new ArrayList<>(produced);
+                }
+            }
+            return attempt;
+        }
+
+    }
+
+    /**
+     * Implementa a tarefa de avaliação especulativa de um intervalo de
+     * eventos de uma janela.
+     */
+    private final class Speculation extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // eventos da janela e mapa base
+        private final transient List<Event> events;
+        private final transient Map<String, Object> base;
+
+        // forma compilada da coleção de regras
+        private final transient RuleSet rules;
+
+        // resultados das avaliações
+        private final transient Attempt[] attempts;
+
+        // intervalo de eventos
+        private final int from;
+        private final int to;
+
+        /**
+         * Construtor.
+         *
+         * @param events Eventos da janela.
+         * @param base Mapa base de atributos.
+         * @param rules Forma compilada da coleção de regras.
+         * @param attempts Resultados das avaliações.
+         * @param from Posição inicial, inclusiva.
+         * @param to Posição final, exclusiva.
+         */
+        Speculation(List<Event> events, Map<String, Object> base,
+                RuleSet rules, Attempt[] attempts, int from, int to) {
+            this.events = events;
+            this.base = base;
+            this.rules = rules;
+            this.attempts = attempts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Speculation(events, base, rules, attempts,
+                        from, middle), new Speculation(events, base, rules,
+                                attempts, middle, to));
+                return;
+            }
+
+            // uma falha na avaliação especulativa, ou
+            // a aplicação de uma regra não isolada, é
+            // descartada, e o evento é reavaliado
+            // durante a efetivação, em ordem
+            try {
+                attempts[from] = speculators.get().attempt(
+                        events.get(from), base, rules, true);
+            } catch (RuntimeException exception) {
+                attempts[from] = null;
+            }
+        }
+
     }
 
     /**
@@ -285,6 +1001,7 @@ public class Engine {
         sb.append(repeat('=', 60)).append("\n");
 
         // conjunto de regras
+        Collection<Rule> rules = getRules();
         sb.append("Conjunto de regras:").append("\n");
         if (rules.isEmpty()) {
             sb.append(repeat('-', 60)).append("\n");
@@ -319,7 +1036,12 @@ public class Engine {
         // políticas de execução
         sb.append("Políticas de execução:").append("\n");
         sb.append(repeat('-', 60)).append("\n");
-        sb.append("- Resolução de regras: ").append(resolver).append("\n");
+        sb.append("- Resolução de regras: ");
+        sb.append(firstMatch ? "Primeira regra aplicável" : resolver);
+        sb.append("\n");
+        sb.append("- Ordenação de regras: ");
+        sb.append(ruleComparator == null ? "Padrão (ordem de inserção)"
+                : ruleComparator).append("\n");
         sb.append("- Comparação de eventos: ");
         sb.append(outputComparator).append("\n");
         sb.append(repeat('=', 60));
@@ -359,6 +1081,7 @@ public class Engine {
      */
     public void setEnvironment(Map<String, Object> environment) {
         this.environment = environment;
+        bind();
     }
 
     /**
@@ -377,6 +1100,29 @@ public class Engine {
      */
     public void setMethods(Map<String, Object> methods) {
         this.methods = methods;
+        bind();
+    }
+
+    /**
+     * Associa os métodos e o ambiente de execução à fábrica de variáveis de
+     * longa duração, utilizada na execução das ações compiladas.
+     */
+    private void bind() {
+        variables = factory();
+        transformer = new Transformer(variables);
+    }
+
+    /**
+     * Cria uma nova fábrica de variáveis de longa duração, contendo os
+     * métodos e o ambiente de execução do motor de eventos.
+     *
+     * @return Nova fábrica de variáveis.
+     */
+    private VariableResolverFactory factory() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("environment", environment);
+        return new MapVariableResolverFactory(map,
+                new MapVariableResolverFactory(methods));
     }
 
     /**
@@ -394,7 +1140,53 @@ public class Engine {
      * @param pipeline Motor de eventos para eventos de saída.
      */
     public void setPipeline(Engine pipeline) {
+        stage.ifPresent(Stage::shutdown);
+        this.pipeline = Optional.of(pipeline);
+        this.stage = Optional.empty();
+    }
+
+    /**
+     * Define o motor de eventos para eventos de saída, no modo assíncrono. Os
+     * eventos de saída são entregues a uma fila limitada e consumidos, em
+     * ordem e em lotes, por uma linha de execução dedicada ao motor informado,
+     * que não deve ser utilizado diretamente por outras linhas de execução.
+     *
+     * @param pipeline Motor de eventos para eventos de saída.
+     * @param capacity Capacidade da fila.
+     * @param backpressure Comportamento da fila cheia.
+     */
+    public void setPipeline(Engine pipeline, int capacity,
+            Backpressure backpressure) {
+        stage.ifPresent(Stage::shutdown);
         this.pipeline = Optional.of(pipeline);
+        this.stage = Optional.of(new Stage(pipeline.getIdentifier(),
+                capacity, backpressure, pipeline::consumeAll));
+    }
+
+    /**
+     * Obtém o estágio assíncrono de entrega dos eventos de saída.
+     *
+     * @return Estágio assíncrono, potencialmente vazio.
+     */
+    public Optional<Stage> getStage() {
+        return stage;
+    }
+
+    /**
+     * Encerra, em ordem, os estágios assíncronos do motor de eventos e dos
+     * motores subsequentes, aguardando o consumo dos eventos pendentes. Os
+     * motores subsequentes são encerrados mesmo que o estágio reporte falhas
+     * no consumo de eventos.
+     *
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa.
+     */
+    public void shutdown() {
+        try {
+            stage.ifPresent(Stage::shutdown);
+        } finally {
+            pipeline.ifPresent(Engine::shutdown);
+        }
     }
 
 }
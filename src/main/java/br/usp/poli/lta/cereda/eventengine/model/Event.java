@@ -29,6 +29,12 @@ package br.usp.poli.lta.cereda.eventengine.model;
  */
 public class Event extends Table {
 
+    // conjunto de eventos reutilizáveis do
+    // qual o evento foi obtido e registro
+    // da obtenção, potencialmente inválidos
+    EventPool pool;
+    EventPool.Lease lease;
+
     /**
      * Retorna a representação textual de um evento.
      *
@@ -0,0 +1,230 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.model;
+
+import br.usp.poli.lta.cereda.eventengine.util.Schema;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementa um conjunto de eventos reutilizáveis. Os eventos obtidos do
+ * conjunto são preenchidos pelo chamador e devolvidos ao conjunto quando não
+ * são mais referenciados, tipicamente pelo motor de eventos, por meio de
+ * {@link Engine#setRecycler(java.util.function.Consumer)} e
+ * {@link #recycle(Event)}; o evento devolvido
+ * tem seus atributos removidos, mas o mapa de atributos é mantido, de tal modo
+ * que sucessivos eventos não alocam novas estruturas. Eventos excedentes à
+ * capacidade do conjunto são descartados.
+ *
+ * <p>Opcionalmente, o conjunto detecta vazamentos: cada evento obtido
+ * registra a pilha de chamadas de sua obtenção, e eventos coletados sem terem
+ * sido devolvidos são reportados por {@link #getLeaks()}. A detecção de
+ * vazamentos aloca estruturas a cada obtenção e deve ser utilizada apenas na
+ * depuração.</p>
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class EventPool {
+
+    // eventos disponíveis
+    private final BlockingQueue<Event> available;
+
+    // esquema dos mapas de atributos,
+    // potencialmente inválido
+    private final Schema schema;
+
+    // indica se a detecção de
+    // vazamentos está habilitada
+    private final boolean detection;
+
+    // número de eventos obtidos
+    // e ainda não devolvidos
+    private final AtomicInteger outstanding;
+
+    // registros de obtenção dos eventos
+    // ainda não devolvidos e fila dos
+    // registros de eventos coletados
+    private final Set<Lease> leases;
+    private final ReferenceQueue<Event> collected;
+
+    /**
+     * Construtor.
+     *
+     * @param capacity Número máximo de eventos disponíveis.
+     */
+    public EventPool(int capacity) {
+        this(capacity, null, false);
+    }
+
+    /**
+     * Construtor.
+     *
+     * @param capacity Número máximo de eventos disponíveis.
+     * @param schema Esquema dos mapas de atributos dos eventos criados pelo
+     * conjunto, potencialmente inválido.
+     * @param detection Valor lógico indicando se a detecção de vazamentos
+     * está habilitada.
+     */
+    public EventPool(int capacity, Schema schema, boolean detection) {
+        this.available = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.schema = schema;
+        this.detection = detection;
+        this.outstanding = new AtomicInteger();
+        this.leases = ConcurrentHashMap.newKeySet();
+        this.collected = new ReferenceQueue<>();
+    }
+
+    /**
+     * Obtém um evento vazio do conjunto, criando um novo evento caso não
+     * existam eventos disponíveis.
+     *
+     * @return Evento vazio.
+     */
+    public Event acquire() {
+        Event event = available.poll();
+        if (event == null) {
+            event = new Event();
+            if (schema != null) {
+                event.setAttributes(schema.map());
+            }
+        }
+        event.pool = this;
+        outstanding.incrementAndGet();
+        if (detection) {
+            Lease lease = new Lease(event, collected);
+            event.lease = lease;
+            leases.add(lease);
+        }
+        return event;
+    }
+
+    /**
+     * Devolve o evento informado ao conjunto, removendo seus atributos. O
+     * evento não deve ser utilizado pelo chamador após a devolução.
+     *
+     * @param event Evento a ser devolvido.
+     * @throws IllegalStateException O evento não foi obtido deste conjunto ou
+     * já foi devolvido.
+     */
+    public void release(Event event) {
+        if (event.pool != this) {
+            throw new IllegalStateException("O evento não pertence ao"
+                    + " conjunto ou já foi devolvido.");
+        }
+        event.pool = null;
+        outstanding.decrementAndGet();
+        if (event.lease != null) {
+            leases.remove(event.lease);
+            event.lease.clear();
+            event.lease = null;
+        }
+        event.clear();
+        available.offer(event);
+    }
+
+    /**
+     * Devolve o evento informado ao conjunto, caso tenha sido obtido deste
+     * conjunto e ainda não tenha sido devolvido; demais eventos são
+     * ignorados. Adequado como destino dos eventos consumidos pelo motor de
+     * eventos, que pode receber eventos de outras origens.
+     *
+     * @param event Evento a ser devolvido.
+     * @return Valor lógico informando se o evento foi devolvido.
+     */
+    public boolean recycle(Event event) {
+        if (event.pool != this) {
+            return false;
+        }
+        release(event);
+        return true;
+    }
+
+    /**
+     * Obtém o número de eventos obtidos e ainda não devolvidos, incluindo os
+     * eventos coletados sem devolução.
+     *
+     * @return Número de eventos não devolvidos.
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Obtém o número de eventos disponíveis.
+     *
+     * @return Número de eventos disponíveis.
+     */
+    public int available() {
+        return available.size();
+    }
+
+    /**
+     * Obtém as pilhas de chamadas de obtenção dos eventos coletados sem terem
+     * sido devolvidos desde a consulta anterior. A detecção depende da coleta
+     * de lixo, de tal modo que eventos recém-abandonados podem ainda não ser
+     * reportados.
+     *
+     * @return Lista de pilhas de chamadas, potencialmente vazia; caso a
+     * detecção de vazamentos esteja desabilitada, a lista é sempre vazia.
+     */
+    public List<Throwable> getLeaks() {
+        List<Throwable> leaks = new ArrayList<>();
+        Lease lease;
+        while ((lease = (Lease) collected.poll()) != null) {
+            if (leases.remove(lease)) {
+                leaks.add(lease.trace);
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * Implementa o registro de obtenção de um evento, referenciando o evento
+     * de forma fraca.
+     */
+    static final class Lease extends WeakReference<Event> {
+
+        // pilha de chamadas da obtenção
+        private final Throwable trace;
+
+        /**
+         * Construtor.
+         *
+         * @param event Evento obtido.
+         * @param queue Fila dos registros de eventos coletados.
+         */
+        Lease(Event event, ReferenceQueue<Event> queue) {
+            super(event, queue);
+            this.trace = new Throwable("Evento obtido e não devolvido.");
+        }
+
+    }
+
+}
@@ -20,6 +20,7 @@
  */
 package br.usp.poli.lta.cereda.eventengine.model;
 
+import br.usp.poli.lta.cereda.eventengine.util.SlotMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -170,6 +171,126 @@ public abstract class Table {
         return attributes.putIfAbsent(key, value);
     }
 
+    /**
+     * Obtém o valor inteiro associado à chave informada. Caso o mapa de
+     * atributos seja baseado em um esquema, o valor é obtido diretamente de
+     * sua representação primitiva.
+     *
+     * @param key Chave.
+     * @return Valor inteiro associado à chave.
+     */
+    public int getInt(String key) {
+        return attributes instanceof SlotMap
+                ? ((SlotMap) attributes).getInt(key)
+                : ((Number) attributes.get(key)).intValue();
+    }
+
+    /**
+     * Obtém o valor inteiro longo associado à chave informada. Caso o mapa de
+     * atributos seja baseado em um esquema, o valor é obtido diretamente de
+     * sua representação primitiva.
+     *
+     * @param key Chave.
+     * @return Valor inteiro longo associado à chave.
+     */
+    public long getLong(String key) {
+        return attributes instanceof SlotMap
+                ? ((SlotMap) attributes).getLong(key)
+                : ((Number) attributes.get(key)).longValue();
+    }
+
+    /**
+     * Obtém o valor de ponto flutuante associado à chave informada. Caso o
+     * mapa de atributos seja baseado em um esquema, o valor é obtido
+     * diretamente de sua representação primitiva.
+     *
+     * @param key Chave.
+     * @return Valor de ponto flutuante associado à chave.
+     */
+    public double getDouble(String key) {
+        return attributes instanceof SlotMap
+                ? ((SlotMap) attributes).getDouble(key)
+                : ((Number) attributes.get(key)).doubleValue();
+    }
+
+    /**
+     * Obtém o valor lógico associado à chave informada. Caso o mapa de
+     * atributos seja baseado em um esquema, o valor é obtido diretamente de
+     * sua representação primitiva.
+     *
+     * @param key Chave.
+     * @return Valor lógico associado à chave.
+     */
+    public boolean getBoolean(String key) {
+        return attributes instanceof SlotMap
+                ? ((SlotMap) attributes).getBoolean(key)
+                : (Boolean) attributes.get(key);
+    }
+
+    /**
+     * Associa o valor inteiro à chave informada. Caso o mapa de atributos seja
+     * baseado em um esquema, o valor é armazenado em sua representação
+     * primitiva.
+     *
+     * @param key Chave.
+     * @param value Valor inteiro.
+     */
+    public void putInt(String key, int value) {
+        if (attributes instanceof SlotMap) {
+            ((SlotMap) attributes).putInt(key, value);
+        } else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor inteiro longo à chave informada. Caso o mapa de
+     * atributos seja baseado em um esquema, o valor é armazenado em sua
+     * representação primitiva.
+     *
+     * @param key Chave.
+     * @param value Valor inteiro longo.
+     */
+    public void putLong(String key, long value) {
+        if (attributes instanceof SlotMap) {
+            ((SlotMap) attributes).putLong(key, value);
+        } else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor de ponto flutuante à chave informada. Caso o mapa de
+     * atributos seja baseado em um esquema, o valor é armazenado em sua
+     * representação primitiva.
+     *
+     * @param key Chave.
+     * @param value Valor de ponto flutuante.
+     */
+    public void putDouble(String key, double value) {
+        if (attributes instanceof SlotMap) {
+            ((SlotMap) attributes).putDouble(key, value);
+        } else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor lógico à chave informada. Caso o mapa de atributos seja
+     * baseado em um esquema, o valor é armazenado em sua representação
+     * primitiva.
+     *
+     * @param key Chave.
+     * @param value Valor lógico.
+     */
+    public void putBoolean(String key, boolean value) {
+        if (attributes instanceof SlotMap) {
+            ((SlotMap) attributes).putBoolean(key, value);
+        } else {
+            attributes.put(key, value);
+        }
+    }
+
     /**
      * Retorna o código hash do objeto corrente.
      *
@@ -22,12 +22,13 @@ package br.usp.poli.lta.cereda.eventengine.policies;
 
 import br.usp.poli.lta.cereda.eventengine.model.Rule;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Implementa a resolução padrão de regras.
  *
  * @author Paulo Roberto Massa Cereda
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public class DefaultRuleResolver implements RuleResolver {
@@ -42,7 +43,8 @@ public class DefaultRuleResolver implements RuleResolver {
      */
     @Override
     public Rule select(Collection<Rule> matches) {
-        return matches.iterator().next();
+        return matches instanceof List ? ((List<Rule>) matches).get(0)
+                : matches.iterator().next();
     }
 
     /**
@@ -0,0 +1,91 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.policies;
+
+import br.usp.poli.lta.cereda.eventengine.model.Rule;
+import java.util.Comparator;
+
+/**
+ * Implementa a ordenação de regras a partir de um atributo de prioridade.
+ * Regras com maior prioridade são avaliadas primeiro; regras sem o atributo
+ * têm prioridade zero.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class PriorityRuleComparator implements Comparator<Rule> {
+
+    // atributo de prioridade
+    private final String attribute;
+
+    /**
+     * Construtor, utilizando o atributo 'priority'.
+     */
+    public PriorityRuleComparator() {
+        this("priority");
+    }
+
+    /**
+     * Construtor.
+     *
+     * @param attribute Atributo de prioridade.
+     */
+    public PriorityRuleComparator(String attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * Compara duas regras de acordo com suas prioridades.
+     *
+     * @param a Primeira regra.
+     * @param b Segunda regra.
+     * @return Valor negativo caso a primeira regra tenha maior prioridade,
+     * positivo caso a segunda regra tenha maior prioridade ou zero, caso
+     * ambas tenham a mesma prioridade.
+     */
+    @Override
+    public int compare(Rule a, Rule b) {
+        return Double.compare(priority(b), priority(a));
+    }
+
+    /**
+     * Obtém a prioridade da regra.
+     *
+     * @param rule Regra.
+     * @return Prioridade da regra.
+     */
+    private double priority(Rule rule) {
+        Object value = rule.get(attribute);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * Obtém uma representação textual da ordenação de regras.
+     *
+     * @return Representação textual da ordenação de regras.
+     */
+    @Override
+    public String toString() {
+        return "Prioridade (atributo '" + attribute + "')";
+    }
+
+}
@@ -0,0 +1,806 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.EventPool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementa uma fila de eventos pendentes armazenada fora do heap. Os
+ * atributos de cada evento são codificados em formato binário compacto em
+ * segmentos de memória direta, e os eventos são decodificados apenas quando
+ * retirados da fila; chaves e textos curtos são representados por códigos de
+ * um dicionário de textos, ou por seus bytes, caso o dicionário esteja
+ * cheio. Quando a memória utilizada pelos segmentos atinge
+ * o limite informado, os segmentos mais recentes são transferidos para um
+ * arquivo temporário e lidos novamente, em ordem, quando alcançados pela
+ * retirada; desse modo, o uso do heap independe do número de eventos
+ * pendentes.
+ *
+ * <p>São codificados diretamente valores inválidos, números inteiros, longos
+ * e de ponto flutuante, valores lógicos, textos, listas e mapas; demais
+ * valores serializáveis são codificados por meio da serialização padrão.
+ * Valores não serializáveis não são aceitos. Os métodos de inserção e
+ * retirada podem ser utilizados por linhas de execução distintas.</p>
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Backlog {
+
+    // marcas de tipo dos valores codificados
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte SYMBOL = 7;
+    private static final byte TEXT = 8;
+    private static final byte LIST = 9;
+    private static final byte MAP = 10;
+    private static final byte OBJECT = 11;
+
+    // comprimento máximo dos textos
+    // representados no dicionário
+    private static final int SYMBOL_LENGTH = 64;
+
+    // número máximo de textos no dicionário
+    private static final int DICTIONARY_SIZE = 1 << 16;
+
+    // tamanho de cada segmento, em bytes
+    private final int segmentSize;
+
+    // número máximo de segmentos em memória,
+    // reservado o segmento de leitura dos
+    // segmentos transferidos para o arquivo
+    private final int segmentLimit;
+
+    // diretório do arquivo temporário
+    private final File directory;
+
+    // segmentos pendentes, em ordem
+    private final ArrayDeque<Segment> segments;
+
+    // memória direta disponível para reuso
+    private final ArrayDeque<ByteBuffer> free;
+
+    // número de segmentos em memória alocados
+    private int allocated;
+
+    // segmento de leitura dos segmentos
+    // transferidos, potencialmente inválido
+    private ByteBuffer loading;
+
+    // dicionário de textos e códigos
+    private final Map<String, Integer> codes;
+    private final List<String> symbols;
+
+    // área de codificação de um evento
+    private ByteBuffer scratch;
+
+    // arquivo temporário, potencialmente
+    // inválido, e seu comprimento
+    private File file;
+    private FileChannel channel;
+    private long end;
+
+    // número de segmentos no arquivo
+    private int spilled;
+
+    // número de eventos pendentes
+    private long size;
+
+    /**
+     * Construtor.
+     *
+     * @param segmentSize Tamanho de cada segmento, em bytes; cada evento
+     * codificado deve caber em um segmento.
+     * @param memoryLimit Limite de memória direta, em bytes; deve comportar
+     * ao menos três segmentos (leitura, escrita e leitura do arquivo).
+     * @param directory Diretório do arquivo temporário, potencialmente
+     * inválido (diretório temporário padrão).
+     */
+    public Backlog(int segmentSize, long memoryLimit, File directory) {
+        if (segmentSize <= 0 || memoryLimit < 3L * segmentSize) {
+            throw new IllegalArgumentException("O limite de memória deve"
+                    + " comportar ao menos três segmentos.");
+        }
+        this.segmentSize = segmentSize;
+        this.segmentLimit = (int) Math.min(Integer.MAX_VALUE,
+                memoryLimit / segmentSize - 1);
+        this.directory = directory;
+        this.segments = new ArrayDeque<>();
+        this.free = new ArrayDeque<>();
+        this.codes = new HashMap<>();
+        this.symbols = new ArrayList<>();
+        this.scratch = ByteBuffer.allocate(Math.min(segmentSize, 1024));
+    }
+
+    /**
+     * Insere o evento informado ao final da fila, codificando seus atributos.
+     * O evento não é referenciado pela fila após a inserção.
+     *
+     * @param event Evento a ser inserido.
+     * @throws IllegalArgumentException O evento codificado excede o tamanho
+     * do segmento ou contém chaves inválidas ou valores não serializáveis.
+     */
+    public synchronized void offer(Event event) {
+        scratch.clear();
+        encode(event.getAttributes());
+        scratch.flip();
+        int length = scratch.remaining();
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("O evento codificado excede"
+                    + " o tamanho do segmento.");
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.sealed
+                || tail.buffer.remaining() < length) {
+            if (tail != null) {
+                seal(tail);
+            }
+            tail = new Segment(obtain());
+            segments.addLast(tail);
+        }
+        tail.buffer.put(scratch);
+        tail.records++;
+        size++;
+    }
+
+    /**
+     * Retira e decodifica o primeiro evento da fila.
+     *
+     * @return Primeiro evento da fila ou uma referência inválida, caso a
+     * fila esteja vazia.
+     */
+    public Event poll() {
+        return poll(null);
+    }
+
+    /**
+     * Retira e decodifica o primeiro evento da fila, preenchendo um evento
+     * obtido do conjunto de eventos reutilizáveis informado.
+     *
+     * @param pool Conjunto de eventos reutilizáveis, potencialmente inválido.
+     * @return Primeiro evento da fila ou uma referência inválida, caso a
+     * fila esteja vazia.
+     * @throws IllegalStateException O evento não pôde ser decodificado; o
+     * evento permanece no início da fila.
+     */
+    public synchronized Event poll(EventPool pool) {
+        Segment head = segments.peekFirst();
+        if (head == null) {
+            return null;
+        }
+        if (head.buffer == null) {
+            load(head);
+        }
+        ByteBuffer view = head.view;
+        view.limit(head.sealed ? head.length : head.buffer.position());
+
+        // a posição de leitura e o número de
+        // eventos pendentes são alterados apenas
+        // após a decodificação completa do evento
+        int start = view.position();
+        Event event = pool != null ? pool.acquire() : new Event();
+        try {
+            int count = readInt(view);
+            for (int i = 0; i < count; i++) {
+                String key = decodeText(view);
+                event.put(key, decode(view));
+            }
+        } catch (RuntimeException exception) {
+            view.position(start);
+            if (pool != null) {
+                pool.release(event);
+            }
+            throw exception;
+        }
+        size--;
+        if (--head.records == 0 && (head.sealed || size == 0)) {
+            segments.pollFirst();
+            release(head);
+        }
+        return event;
+    }
+
+    /**
+     * Submete ao motor de eventos, em lote, até o número informado de eventos
+     * pendentes. Cada evento é retirado e decodificado apenas quando
+     * alcançado pelo consumo.
+     *
+     * @param engine Motor de eventos.
+     * @param pool Conjunto de eventos reutilizáveis, potencialmente inválido.
+     * @param max Número máximo de eventos.
+     * @return Conjunto de bits no qual o bit de cada posição indica se o
+     * evento correspondente foi consumido.
+     */
+    public BitSet drainTo(Engine engine, EventPool pool, int max) {
+        return engine.consumeAll(new Iterator<Event>() {
+
+            // número de eventos retirados
+            private int count;
+
+            // próximo evento, potencialmente inválido
+            private Event next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && count < max) {
+                    next = poll(pool);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Event next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Event event = next;
+                next = null;
+                count++;
+                return event;
+            }
+
+        });
+    }
+
+    /**
+     * Obtém o número de eventos pendentes.
+     *
+     * @return Número de eventos pendentes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Obtém a memória direta alocada pela fila, em bytes.
+     *
+     * @return Memória direta alocada.
+     */
+    public synchronized long memory() {
+        return (long) (allocated + (loading != null ? 1 : 0)) * segmentSize;
+    }
+
+    /**
+     * Obtém o número de bytes pendentes no arquivo temporário.
+     *
+     * @return Número de bytes pendentes no arquivo temporário.
+     */
+    public synchronized long spilled() {
+        long total = 0;
+        for (Segment segment : segments) {
+            if (segment.buffer == null) {
+                total += segment.length;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Descarta os eventos pendentes e remove o arquivo temporário.
+     */
+    public synchronized void close() {
+        segments.clear();
+        free.clear();
+        allocated = 0;
+        loading = null;
+        spilled = 0;
+        size = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException nothandled) {
+                // o arquivo é removido
+                // de qualquer forma
+            }
+            file.delete();
+            channel = null;
+            file = null;
+            end = 0;
+        }
+    }
+
+    /**
+     * Obtém um segmento de memória livre, alocando um novo segmento ou
+     * transferindo para o arquivo o segmento mais recente em memória, caso o
+     * limite tenha sido atingido.
+     *
+     * @return Segmento de memória livre.
+     */
+    private ByteBuffer obtain() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null && allocated < segmentLimit) {
+            allocated++;
+            buffer = ByteBuffer.allocateDirect(segmentSize);
+        }
+        if (buffer == null) {
+            buffer = spill();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Transfere para o arquivo temporário o segmento selado mais recente em
+     * memória, exceto o primeiro segmento, cuja leitura pode estar em
+     * andamento.
+     *
+     * @return Memória liberada pelo segmento transferido.
+     */
+    private ByteBuffer spill() {
+        Segment first = segments.peekFirst();
+        Segment victim = null;
+        for (Iterator<Segment> iterator = segments.descendingIterator();
+                iterator.hasNext();) {
+            Segment segment = iterator.next();
+            if (segment != first && segment.buffer != null) {
+                victim = segment;
+                break;
+            }
+        }
+        if (victim == null) {
+            throw new IllegalStateException("Não há segmentos a transferir.");
+        }
+        try {
+            if (channel == null) {
+                file = File.createTempFile("backlog", ".bin", directory);
+                file.deleteOnExit();
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            ByteBuffer data = victim.buffer.duplicate();
+            data.position(0);
+            data.limit(victim.length);
+            victim.offset = end;
+            while (data.hasRemaining()) {
+                end += channel.write(data, end);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        ByteBuffer buffer = victim.buffer;
+        victim.buffer = null;
+        victim.view = null;
+        spilled++;
+        return buffer;
+    }
+
+    /**
+     * Lê do arquivo temporário o segmento informado, no segmento de leitura.
+     *
+     * @param segment Segmento transferido.
+     */
+    private void load(Segment segment) {
+        if (loading == null) {
+            loading = ByteBuffer.allocateDirect(segmentSize);
+        }
+        loading.clear();
+        loading.limit(segment.length);
+        try {
+            long position = segment.offset;
+            while (loading.hasRemaining()) {
+                int read = channel.read(loading, position);
+                if (read < 0) {
+                    throw new IOException("Fim inesperado do arquivo.");
+                }
+                position += read;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        segment.buffer = loading;
+        segment.view = loading.duplicate();
+        segment.view.position(0);
+        segment.loaded = true;
+        spilled--;
+    }
+
+    /**
+     * Sela o segmento informado, que deixa de receber eventos.
+     *
+     * @param segment Segmento a ser selado.
+     */
+    private void seal(Segment segment) {
+        segment.sealed = true;
+        segment.length = segment.buffer.position();
+    }
+
+    /**
+     * Libera a memória do segmento consumido e, caso não existam segmentos
+     * transferidos pendentes, descarta o conteúdo do arquivo temporário.
+     *
+     * @param segment Segmento consumido.
+     */
+    private void release(Segment segment) {
+        if (!segment.loaded) {
+            free.addLast(segment.buffer);
+        }
+        if (spilled == 0 && channel != null && end != 0) {
+            try {
+                channel.truncate(0);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            end = 0;
+        }
+    }
+
+    /**
+     * Codifica o mapa de atributos na área de codificação.
+     *
+     * @param attributes Mapa de atributos.
+     */
+    private void encode(Map<String, Object> attributes) {
+        writeInt(attributes.size());
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new IllegalArgumentException("O evento contém uma"
+                        + " chave inválida.");
+            }
+            encode(entry.getKey());
+            encode(entry.getValue());
+        }
+    }
+
+    /**
+     * Codifica o valor informado na área de codificação.
+     *
+     * @param value Valor.
+     */
+    private void encode(Object value) {
+        if (value == null) {
+            writeByte(NULL);
+        } else if (value instanceof Integer) {
+            writeByte(INT);
+            writeLong((Integer) value);
+        } else if (value instanceof Long) {
+            writeByte(LONG);
+            writeLong((Long) value);
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            reserve(8);
+            scratch.putDouble((Double) value);
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            reserve(4);
+            scratch.putFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof String) {
+            encode((String) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(LIST);
+            writeInt(list.size());
+            for (Object element : list) {
+                encode(element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(MAP);
+            writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                encode(entry.getKey());
+                encode(entry.getValue());
+            }
+        } else if (value instanceof Serializable) {
+            writeByte(OBJECT);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(value);
+            } catch (IOException exception) {
+                throw new IllegalArgumentException("O valor não pôde ser"
+                        + " serializado.", exception);
+            }
+            writeBytes(bytes.toByteArray());
+        } else {
+            throw new IllegalArgumentException("O valor não é"
+                    + " serializável: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Codifica o texto informado na área de codificação, por meio de seu
+     * código no dicionário ou, caso o texto seja longo ou o dicionário esteja
+     * cheio, de seus bytes.
+     *
+     * @param text Texto.
+     */
+    private void encode(String text) {
+        int code = text.length() <= SYMBOL_LENGTH ? symbol(text) : -1;
+        if (code != -1) {
+            writeByte(SYMBOL);
+            writeInt(code);
+        } else {
+            writeByte(TEXT);
+            writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Decodifica um texto a partir da posição corrente da área informada.
+     *
+     * @param view Área de leitura.
+     * @return Texto decodificado.
+     */
+    private String decodeText(ByteBuffer view) {
+        return view.get() == SYMBOL ? symbols.get(readInt(view))
+                : new String(readBytes(view), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodifica um valor a partir da posição corrente da área informada.
+     *
+     * @param view Área de leitura.
+     * @return Valor decodificado.
+     */
+    private Object decode(ByteBuffer view) {
+        byte tag = view.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INT:
+                return (int) readLong(view);
+            case LONG:
+                return readLong(view);
+            case DOUBLE:
+                return view.getDouble();
+            case FLOAT:
+                return view.getFloat();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case SYMBOL:
+                return symbols.get(readInt(view));
+            case TEXT:
+                return new String(readBytes(view), StandardCharsets.UTF_8);
+            case LIST: {
+                int count = readInt(view);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(decode(view));
+                }
+                return list;
+            }
+            case MAP: {
+                int count = readInt(view);
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    Object key = decode(view);
+                    map.put(key, decode(view));
+                }
+                return map;
+            }
+            default:
+                try (ObjectInputStream input = new ObjectInputStream(
+                        new ByteArrayInputStream(readBytes(view)))) {
+                    return input.readObject();
+                } catch (IOException | ClassNotFoundException exception) {
+                    throw new IllegalStateException("O valor não pôde ser"
+                            + " desserializado.", exception);
+                }
+        }
+    }
+
+    /**
+     * Obtém o código do texto informado no dicionário, registrando-o caso
+     * necessário.
+     *
+     * @param text Texto.
+     * @return Código do texto ou -1, caso o dicionário esteja cheio.
+     */
+    private int symbol(String text) {
+        Integer code = codes.get(text);
+        if (code == null) {
+            if (symbols.size() == DICTIONARY_SIZE) {
+                return -1;
+            }
+            code = symbols.size();
+            codes.put(text, code);
+            symbols.add(text);
+        }
+        return code;
+    }
+
+    /**
+     * Garante espaço na área de codificação, ampliando-a caso necessário.
+     *
+     * @param length Número de bytes.
+     */
+    private void reserve(int length) {
+        if (scratch.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                    scratch.capacity() * 2, scratch.position() + length));
+            scratch.flip();
+            larger.put(scratch);
+            scratch = larger;
+        }
+    }
+
+    /**
+     * Escreve um byte na área de codificação.
+     *
+     * @param value Byte.
+     */
+    private void writeByte(byte value) {
+        reserve(1);
+        scratch.put(value);
+    }
+
+    /**
+     * Escreve um inteiro não negativo, em comprimento variável, na área de
+     * codificação.
+     *
+     * @param value Inteiro não negativo.
+     */
+    private void writeInt(int value) {
+        reserve(5);
+        while ((value & ~0x7F) != 0) {
+            scratch.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        scratch.put((byte) value);
+    }
+
+    /**
+     * Escreve um inteiro longo, em comprimento variável e codificação de
+     * sinal alternada, na área de codificação.
+     *
+     * @param value Inteiro longo.
+     */
+    private void writeLong(long value) {
+        reserve(10);
+        long bits = (value << 1) ^ (value >> 63);
+        while ((bits & ~0x7FL) != 0) {
+            scratch.put((byte) ((bits & 0x7F) | 0x80));
+            bits >>>= 7;
+        }
+        scratch.put((byte) bits);
+    }
+
+    /**
+     * Escreve uma sequência de bytes, precedida de seu comprimento, na área
+     * de codificação.
+     *
+     * @param bytes Sequência de bytes.
+     */
+    private void writeBytes(byte[] bytes) {
+        writeInt(bytes.length);
+        reserve(bytes.length);
+        scratch.put(bytes);
+    }
+
+    /**
+     * Lê um inteiro não negativo em comprimento variável.
+     *
+     * @param view Área de leitura.
+     * @return Inteiro lido.
+     */
+    private static int readInt(ByteBuffer view) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = view.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    /**
+     * Lê um inteiro longo em comprimento variável e codificação de sinal
+     * alternada.
+     *
+     * @param view Área de leitura.
+     * @return Inteiro longo lido.
+     */
+    private static long readLong(ByteBuffer view) {
+        long bits = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = view.get();
+            bits |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+
+    /**
+     * Lê uma sequência de bytes precedida de seu comprimento.
+     *
+     * @param view Área de leitura.
+     * @return Sequência de bytes lida.
+     */
+    private static byte[] readBytes(ByteBuffer view) {
+        byte[] bytes = new byte[readInt(view)];
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Implementa um segmento de eventos codificados, em memória ou
+     * transferido para o arquivo temporário.
+     */
+    private static final class Segment {
+
+        // memória do segmento, potencialmente
+        // inválida, e área de leitura
+        private ByteBuffer buffer;
+        private ByteBuffer view;
+
+        // indica se o segmento foi selado
+        // e se foi lido a partir do arquivo
+        private boolean sealed;
+        private boolean loaded;
+
+        // comprimento e posição do
+        // segmento no arquivo
+        private int length;
+        private long offset;
+
+        // número de eventos pendentes
+        private int records;
+
+        /**
+         * Construtor.
+         *
+         * @param buffer Memória do segmento.
+         */
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.view = buffer.duplicate();
+            this.view.position(0);
+        }
+
+    }
+
+}
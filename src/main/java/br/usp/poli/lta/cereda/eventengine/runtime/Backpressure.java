@@ -0,0 +1,44 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+/**
+ * Define o comportamento de uma fila limitada quando não há espaço para um
+ * novo evento.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public enum Backpressure {
+
+    // o produtor aguarda até que
+    // exista espaço na fila
+    BLOCK,
+
+    // o evento mais antigo da fila
+    // é descartado em favor do novo
+    DROP_OLDEST,
+
+    // a submissão do evento falha
+    FAIL
+
+}
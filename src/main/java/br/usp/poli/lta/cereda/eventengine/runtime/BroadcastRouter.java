@@ -0,0 +1,293 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.execution.CompiledRule;
+import br.usp.poli.lta.cereda.eventengine.execution.Equality;
+import br.usp.poli.lta.cereda.eventengine.execution.Evaluation;
+import br.usp.poli.lta.cereda.eventengine.execution.RuleSet;
+import br.usp.poli.lta.cereda.eventengine.model.Configuration;
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Implementa a difusão de eventos para um conjunto de motores de eventos que
+ * compartilham o mesmo conjunto de regras, diferindo apenas em suas
+ * configurações. As condições que dependem apenas do evento são avaliadas uma
+ * única vez por evento; as regras que permanecem aplicáveis determinam, por
+ * meio de um índice dos motores pelo valor do atributo indexado de suas
+ * configurações, quais motores podem consumir o evento. Apenas esses motores
+ * recebem o evento, e são reindexados em seguida. O conjunto de regras
+ * compartilhado acumula as estatísticas da ordenação adaptativa de todos os
+ * motores (veja {@link RuleSet}).
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class BroadcastRouter {
+
+    // condições que referenciam a configuração
+    private static final Pattern CONFIGURATION
+            = Pattern.compile("\\bconfiguration\\b");
+
+    // grupo dos motores sem o atributo indexado
+    private static final Object ABSENT = new Object();
+
+    // grupo dos motores cujo valor do atributo
+    // indexado não permite uma consulta exata
+    private static final Object ANY = new Object();
+
+    // conjunto de regras compartilhado
+    private final RuleSet rules;
+
+    // regras compiladas, em ordem
+    private final List<CompiledRule> compiled;
+
+    // identificadores das condições que dependem
+    // apenas do evento, para cada regra
+    private final int[][] conditions;
+
+    // valores constantes do atributo indexado
+    // da configuração, para cada regra, ou
+    // referências inválidas, caso a regra não
+    // restrinja o atributo
+    private final Object[] values;
+
+    // chave e tipo do atributo indexado
+    private final String key;
+    private final Class<?> kind;
+
+    // contexto de avaliação das condições
+    private final Evaluation evaluation;
+
+    // configuração vazia, utilizada na avaliação
+    // das condições que dependem apenas do evento
+    private final Configuration blank;
+
+    // motores agrupados pelo valor do atributo
+    // indexado e o grupo corrente de cada motor
+    private final Map<Object, Set<Engine>> groups;
+    private final Map<Engine, Object> positions;
+
+    // motores, na ordem de inclusão
+    private final Set<Engine> engines;
+
+    /**
+     * Construtor.
+     *
+     * @param rules Conjunto de regras compartilhado pelos motores de eventos.
+     */
+    public BroadcastRouter(RuleSet rules) {
+        this.rules = rules;
+        this.compiled = rules.getCompiledRules();
+        this.conditions = new int[compiled.size()][];
+        this.values = new Object[compiled.size()];
+        this.key = rules.getIndex().getConfigurationKey();
+        this.kind = rules.getIndex().getConfigurationKind();
+        for (int i = 0; i < compiled.size(); i++) {
+            CompiledRule rule = compiled.get(i);
+            String[] sources = rule.getSources();
+            int[] identifiers = rule.getIdentifiers();
+            List<Integer> list = new ArrayList<>();
+            for (int j = 0; j < sources.length; j++) {
+                if (!CONFIGURATION.matcher(sources[j]).find()) {
+                    list.add(identifiers[j]);
+                }
+            }
+            conditions[i] = list.stream().mapToInt(Integer::intValue).
+                    toArray();
+            int position = rule.getConfigurationPosition();
+            if (kind != null && position != -1) {
+                values[i] = Equality.parse(sources[position]).getValue();
+            }
+        }
+        this.evaluation = rules.evaluation();
+        this.blank = new Configuration();
+        this.groups = new HashMap<>();
+        this.positions = new IdentityHashMap<>();
+        this.engines = new LinkedHashSet<>();
+    }
+
+    /**
+     * Adiciona o motor de eventos ao roteador, associando-o ao conjunto de
+     * regras compartilhado.
+     *
+     * @param engine Motor de eventos.
+     */
+    public void add(Engine engine) {
+        engine.setRuleSet(rules);
+        if (engines.add(engine)) {
+            reindex(engine);
+        }
+    }
+
+    /**
+     * Remove o motor de eventos do roteador.
+     *
+     * @param engine Motor de eventos.
+     */
+    public void remove(Engine engine) {
+        if (engines.remove(engine)) {
+            groups.get(positions.remove(engine)).remove(engine);
+        }
+    }
+
+    /**
+     * Atualiza o grupo do motor de eventos de acordo com sua configuração
+     * corrente. Deve ser chamado caso a configuração do motor seja alterada
+     * fora do roteador.
+     *
+     * @param engine Motor de eventos.
+     */
+    public void reindex(Engine engine) {
+        Object group = group(engine.getConfiguration());
+        Object previous = positions.put(engine, group);
+        if (previous != group && (previous == null
+                || !previous.equals(group))) {
+            if (previous != null) {
+                groups.get(previous).remove(engine);
+            }
+            groups.computeIfAbsent(group, (Object value)
+                    -> new LinkedHashSet<>()).add(engine);
+        }
+    }
+
+    /**
+     * Difunde o evento aos motores que podem consumi-lo.
+     *
+     * @param event Evento a ser difundido.
+     * @return Número de motores que consumiram o evento.
+     */
+    public int dispatch(Event event) {
+        List<Engine> targets = targets(event);
+        int consumed = 0;
+        for (Engine engine : targets) {
+            if (engine.consume(event)) {
+                consumed++;
+            }
+            reindex(engine);
+        }
+        return consumed;
+    }
+
+    /**
+     * Obtém os motores que podem consumir o evento informado.
+     *
+     * @param event Evento.
+     * @return Lista de motores, potencialmente vazia.
+     */
+    public List<Engine> targets(Event event) {
+
+        // avalia as condições que dependem
+        // apenas do evento, uma única vez
+        evaluation.reset(blank, event);
+        Set<Object> wanted = new HashSet<>();
+        boolean everyone = false;
+        for (int i = 0; i < compiled.size() && !everyone; i++) {
+            if (holds(conditions[i])) {
+                if (values[i] == null) {
+                    everyone = true;
+                } else {
+                    wanted.add(values[i]);
+                }
+            }
+        }
+
+        // obtém os motores dos grupos
+        // correspondentes às regras que
+        // permanecem aplicáveis
+        if (everyone) {
+            return new ArrayList<>(engines);
+        }
+        List<Engine> targets = new ArrayList<>();
+        if (wanted.isEmpty()) {
+            return targets;
+        }
+        wanted.add(ANY);
+        for (Object value : wanted) {
+            Set<Engine> group = groups.get(value);
+            if (group != null) {
+                targets.addAll(group);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Obtém o número de motores de eventos do roteador.
+     *
+     * @return Número de motores de eventos.
+     */
+    public int size() {
+        return engines.size();
+    }
+
+    /**
+     * Verifica se as condições informadas são satisfeitas pelo evento
+     * corrente. Uma condição cuja avaliação falha é considerada satisfeita,
+     * de tal modo que a falha ocorra no próprio motor de eventos.
+     *
+     * @param identifiers Identificadores das condições.
+     * @return Valor lógico indicando se as condições são satisfeitas.
+     */
+    private boolean holds(int[] identifiers) {
+        for (int identifier : identifiers) {
+            try {
+                if (!evaluation.test(identifier)) {
+                    return false;
+                }
+            } catch (RuntimeException exception) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determina o grupo correspondente à configuração informada, de acordo
+     * com o valor do atributo indexado.
+     *
+     * @param configuration Configuração.
+     * @return Grupo da configuração.
+     */
+    private Object group(Configuration configuration) {
+        if (kind == null) {
+            return ANY;
+        }
+        Object value = configuration.get(key);
+        if (value == null) {
+            return ABSENT;
+        }
+        value = Equality.normalize(value);
+        return value != null && value.getClass() == kind ? value : ANY;
+    }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementa um hospedeiro de motores de eventos, adequado a um grande número
+ * de motores pequenos. Cada motor recebe uma caixa de mensagens, na qual os
+ * eventos são depositados sem bloqueios; os motores com eventos pendentes são
+ * agendados em um conjunto de tarefas com roubo de trabalho e consomem suas
+ * caixas de mensagens em lotes antes de ceder a linha de execução. Um motor
+ * nunca é executado por duas linhas de execução ao mesmo tempo, e a caixa de
+ * mensagens de um motor ocioso não mantém estruturas alocadas além de seus
+ * próprios campos. As falhas ocorridas no consumo de eventos de qualquer motor
+ * são reportadas apenas na espera pelo esvaziamento, nunca no depósito.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class EngineHost {
+
+    // conjunto de tarefas
+    private final ForkJoinPool pool;
+
+    // número máximo de eventos
+    // consumidos por execução
+    private final int batch;
+
+    // consumidor dos eventos de saída,
+    // potencialmente inválido
+    private final BiConsumer<Engine, List<Event>> sink;
+
+    // número de eventos depositados e
+    // de motores agendados
+    private final AtomicLong pending;
+
+    // monitor de espera pelo esvaziamento
+    private final Object lock;
+
+    // lote reutilizado por cada
+    // linha de execução do conjunto
+    private final ThreadLocal<List<Event>> batches;
+
+    // falhas ocorridas no consumo
+    private final Failures failures;
+
+    /**
+     * Construtor.
+     *
+     * @param pool Conjunto de tarefas com roubo de trabalho.
+     * @param batch Número máximo de eventos consumidos por um motor em cada
+     * execução.
+     * @param sink Consumidor dos eventos de saída de cada motor, chamado após
+     * cada lote, ou uma referência inválida, caso os eventos de saída devam
+     * permanecer no motor.
+     */
+    public EngineHost(ForkJoinPool pool, int batch,
+            BiConsumer<Engine, List<Event>> sink) {
+        if (batch < 1) {
+            throw new IllegalArgumentException("O tamanho do lote deve ser"
+                    + " positivo.");
+        }
+        this.pool = pool;
+        this.batch = batch;
+        this.sink = sink;
+        this.pending = new AtomicLong();
+        this.lock = new Object();
+        this.batches = ThreadLocal.withInitial(() -> new ArrayList<>(batch));
+        this.failures = new Failures();
+    }
+
+    /**
+     * Hospeda o motor de eventos informado, que não deve ser utilizado
+     * diretamente enquanto houver eventos pendentes.
+     *
+     * @param engine Motor de eventos.
+     * @return Caixa de mensagens do motor.
+     */
+    public Mailbox register(Engine engine) {
+        return new Mailbox(engine);
+    }
+
+    /**
+     * Aguarda até que todos os eventos depositados tenham sido consumidos.
+     *
+     * @throws InterruptedException A espera foi interrompida.
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa.
+     */
+    public void await() throws InterruptedException {
+        synchronized (lock) {
+            while (pending.get() != 0) {
+                lock.wait();
+            }
+        }
+        failures.rethrow();
+    }
+
+    /**
+     * Obtém o número de eventos depositados e de motores agendados.
+     *
+     * @return Número de eventos depositados e de motores agendados.
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * Obtém a primeira falha ocorrida no consumo de eventos e ainda não
+     * reportada, à qual as falhas seguintes são anexadas como falhas
+     * suprimidas. As falhas são reportadas, e deixam de ser mantidas, na
+     * próxima espera.
+     *
+     * @return Primeira falha ou uma referência inválida.
+     */
+    public RuntimeException getFailure() {
+        return failures.get();
+    }
+
+    /**
+     * Subtrai o valor informado do número de pendências, notificando as
+     * linhas de execução em espera caso não existam mais pendências.
+     *
+     * @param amount Valor a ser subtraído.
+     */
+    private void release(long amount) {
+        if (pending.addAndGet(-amount) == 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Implementa um elemento da pilha de eventos de uma caixa de mensagens.
+     */
+    private static final class Link {
+
+        // evento depositado
+        private final Event event;
+
+        // elemento seguinte, depositado
+        // anteriormente
+        private Link next;
+
+        /**
+         * Construtor.
+         *
+         * @param event Evento depositado.
+         */
+        Link(Event event) {
+            this.event = event;
+        }
+
+    }
+
+    /**
+     * Implementa a caixa de mensagens de um motor de eventos, na forma de uma
+     * pilha sem bloqueios cujo topo é uma referência inválida enquanto o
+     * motor estiver ocioso.
+     */
+    public final class Mailbox {
+
+        // motor de eventos
+        private final Engine engine;
+
+        // topo da pilha de eventos e indicação
+        // de agendamento ou execução do motor,
+        // visíveis aos atualizadores atômicos
+        volatile Link head;
+        volatile int scheduled;
+
+        // eventos retirados da pilha, em
+        // ordem de depósito, e ainda não
+        // consumidos
+        private Link backlog;
+
+        /**
+         * Construtor.
+         *
+         * @param engine Motor de eventos.
+         */
+        private Mailbox(Engine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Obtém o motor de eventos.
+         *
+         * @return Motor de eventos.
+         */
+        public Engine getEngine() {
+            return engine;
+        }
+
+        /**
+         * Deposita um evento na caixa de mensagens, agendando o motor de
+         * eventos caso esteja ocioso.
+         *
+         * @param event Evento a ser depositado.
+         */
+        public void post(Event event) {
+            pending.incrementAndGet();
+            Link link = new Link(event);
+            Link current;
+            do {
+                current = head;
+                link.next = current;
+            } while (!HEAD.compareAndSet(this, current, link));
+            schedule();
+        }
+
+        /**
+         * Agenda a execução do motor, caso ainda não esteja agendado. Quando
+         * chamado por uma linha de execução do próprio conjunto de tarefas, o
+         * motor é agendado na fila local dessa linha de execução.
+         */
+        private void schedule() {
+            if (SCHEDULED.compareAndSet(this, 0, 1)) {
+                pending.incrementAndGet();
+                ForkJoinTask<?> task = ForkJoinTask.adapt(this::run);
+                Thread thread = Thread.currentThread();
+                if (thread instanceof ForkJoinWorkerThread
+                        && ((ForkJoinWorkerThread) thread).getPool()
+                        == pool) {
+                    task.fork();
+                } else {
+                    pool.execute(task);
+                }
+            }
+        }
+
+        /**
+         * Consome, em lote, os eventos pendentes da caixa de mensagens. Em
+         * caso de falha, o consumo prossegue a partir do evento seguinte ao
+         * evento com falha.
+         */
+        private void run() {
+            List<Event> events = batches.get();
+            int size = 0;
+            try {
+
+                // os eventos da pilha são retirados
+                // de uma só vez e reordenados na
+                // ordem de depósito
+                if (backlog == null) {
+                    Link link = HEAD.getAndSet(this, null);
+                    Link reversed = null;
+                    while (link != null) {
+                        Link next = link.next;
+                        link.next = reversed;
+                        reversed = link;
+                        link = next;
+                    }
+                    backlog = reversed;
+                }
+                while (backlog != null && events.size() < batch) {
+                    events.add(backlog.event);
+                    backlog = backlog.next;
+                }
+                size = events.size();
+                failures.deliver(events, engine::consumeAll);
+                if (sink != null) {
+                    List<Event> produced = engine.getOutputEvents();
+                    if (!produced.isEmpty()) {
+                        sink.accept(engine, produced);
+                        engine.clearOutputEvents();
+                    }
+                }
+            } catch (RuntimeException exception) {
+                failures.record(exception);
+            } finally {
+                events.clear();
+                scheduled = 0;
+                if (backlog != null || head != null) {
+                    schedule();
+                }
+                release(size + 1);
+            }
+        }
+
+    }
+
+    // atualizadores atômicos dos campos da caixa de
+    // mensagens, evitando um objeto atômico por motor
+    private static final AtomicReferenceFieldUpdater<Mailbox, Link> HEAD
+            = AtomicReferenceFieldUpdater.newUpdater(Mailbox.class,
+                    Link.class, "head");
+    private static final AtomicIntegerFieldUpdater<Mailbox> SCHEDULED
+            = AtomicIntegerFieldUpdater.newUpdater(Mailbox.class,
+                    "scheduled");
+
+}
@@ -0,0 +1,331 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Implementa um processador reativo baseado em um motor de eventos. Os
+ * eventos recebidos do produtor são consumidos em lotes pelo motor de eventos
+ * e os eventos de saída gerados são entregues ao único assinante do
+ * processador, respeitando a demanda solicitada. O processador solicita ao
+ * produtor apenas o número de eventos que cabe na sua capacidade, e deixa de
+ * consumir eventos enquanto os eventos de saída pendentes atingirem essa
+ * capacidade; assim, os eventos pendentes são limitados pela capacidade
+ * acrescida dos eventos de saída de um único lote. O motor de eventos não
+ * deve ter um motor subsequente, nem ser utilizado diretamente enquanto
+ * estiver associado ao processador.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class EngineProcessor implements Flow.Processor<Event, Event> {
+
+    // motor de eventos
+    private final Engine engine;
+
+    // capacidade de eventos pendentes
+    private final int capacity;
+
+    // eventos recebidos e ainda não consumidos
+    private final Queue<Event> input;
+
+    // eventos de saída ainda não entregues,
+    // acessados apenas durante a drenagem
+    private final ArrayDeque<Event> output;
+
+    // lote de eventos a ser consumido
+    private final List<Event> batch;
+
+    // número de solicitações de drenagem
+    // pendentes, garantindo que apenas uma
+    // linha de execução drene por vez
+    private final AtomicInteger work;
+
+    // demanda solicitada pelo assinante
+    private final AtomicLong demand;
+
+    // assinante do processador
+    private final AtomicReference<Flow.Subscriber<? super Event>> downstream;
+
+    // assinatura do produtor
+    private volatile Flow.Subscription upstream;
+
+    // indica se o produtor encerrou o fluxo
+    private volatile boolean done;
+
+    // falha a ser entregue ao assinante
+    private volatile Throwable error;
+
+    // indica se o assinante cancelou a assinatura
+    private volatile boolean cancelled;
+
+    // indica se o sinal de encerramento
+    // já foi entregue ao assinante
+    private boolean terminated;
+
+    /**
+     * Construtor.
+     *
+     * @param engine Motor de eventos.
+     * @param capacity Capacidade de eventos pendentes, também utilizada como
+     * tamanho máximo de um lote.
+     */
+    public EngineProcessor(Engine engine, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A capacidade do processador"
+                    + " deve ser positiva.");
+        }
+        this.engine = engine;
+        this.capacity = capacity;
+        this.input = new ConcurrentLinkedQueue<>();
+        this.output = new ArrayDeque<>();
+        this.batch = new ArrayList<>(capacity);
+        this.work = new AtomicInteger();
+        this.demand = new AtomicLong();
+        this.downstream = new AtomicReference<>();
+    }
+
+    /**
+     * Recebe a assinatura do produtor, solicitando eventos de acordo com a
+     * capacidade do processador.
+     *
+     * @param subscription Assinatura do produtor.
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(capacity);
+    }
+
+    /**
+     * Recebe um evento do produtor.
+     *
+     * @param event Evento.
+     */
+    @Override
+    public void onNext(Event event) {
+        input.offer(Objects.requireNonNull(event));
+        drain();
+    }
+
+    /**
+     * Recebe a falha do produtor, repassada ao assinante.
+     *
+     * @param throwable Falha.
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        drain();
+    }
+
+    /**
+     * Recebe o encerramento do produtor, repassado ao assinante após a
+     * entrega dos eventos de saída pendentes.
+     */
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    /**
+     * Adiciona o assinante do processador. Apenas um assinante é aceito.
+     *
+     * @param subscriber Assinante.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Event> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+
+            });
+            subscriber.onError(new IllegalStateException("O processador"
+                    + " aceita um único assinante."));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("A demanda"
+                            + " solicitada deve ser positiva.");
+                    cancelUpstream();
+                } else {
+                    long current;
+                    long next;
+                    do {
+                        current = demand.get();
+                        next = current + n < 0 ? Long.MAX_VALUE
+                                : current + n;
+                    } while (!demand.compareAndSet(current, next));
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                drain();
+            }
+
+        });
+        drain();
+    }
+
+    /**
+     * Cancela a assinatura do produtor, caso exista.
+     */
+    private void cancelUpstream() {
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Drena os eventos pendentes: entrega os eventos de saída dentro da
+     * demanda do assinante e consome, em lotes, os eventos recebidos enquanto
+     * houver espaço para seus eventos de saída. Apenas uma linha de execução
+     * drena por vez; as solicitações concorrentes são absorvidas pela
+     * drenagem em andamento.
+     */
+    private void drain() {
+        if (work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super Event> subscriber = downstream.get();
+            if (cancelled || terminated) {
+                input.clear();
+                output.clear();
+            } else if (subscriber != null) {
+                emit(subscriber);
+            }
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Entrega os eventos de saída e consome os eventos recebidos, sinalizando
+     * o encerramento do fluxo quando não houver mais eventos pendentes.
+     *
+     * @param subscriber Assinante.
+     */
+    private void emit(Flow.Subscriber<? super Event> subscriber) {
+        long requested = demand.get();
+        long emitted = 0;
+        while (error == null && !cancelled) {
+
+            // entrega os eventos de saída
+            // dentro da demanda solicitada
+            while (emitted < requested && !output.isEmpty()) {
+                subscriber.onNext(output.poll());
+                emitted++;
+            }
+
+            // consome o próximo lote de eventos
+            // enquanto houver espaço para os
+            // eventos de saída
+            if (output.size() >= capacity || !consume()) {
+                break;
+            }
+        }
+        if (emitted > 0 && requested != Long.MAX_VALUE) {
+            demand.addAndGet(-emitted);
+        }
+
+        // sinaliza o encerramento do fluxo
+        Throwable failure = error;
+        if (failure != null) {
+            terminated = true;
+            input.clear();
+            output.clear();
+            subscriber.onError(failure);
+        } else if (done && input.isEmpty() && output.isEmpty()
+                && !cancelled) {
+            terminated = true;
+            subscriber.onComplete();
+        }
+    }
+
+    /**
+     * Consome, em lote, os eventos recebidos, transferindo os eventos de
+     * saída gerados e solicitando ao produtor a reposição dos eventos
+     * consumidos.
+     *
+     * @return Valor lógico indicando se algum evento foi consumido.
+     */
+    private boolean consume() {
+        Event event;
+        while (batch.size() < capacity && (event = input.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        int size = batch.size();
+        try {
+            engine.consumeAll(batch);
+            output.addAll(engine.getOutputEvents());
+            engine.clearOutputEvents();
+        } catch (RuntimeException exception) {
+            error = exception;
+            cancelUpstream();
+            return false;
+        } finally {
+            batch.clear();
+        }
+        if (!done) {
+            upstream.request(size);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,264 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.execution.CompiledRule;
+import br.usp.poli.lta.cereda.eventengine.execution.Evaluation;
+import br.usp.poli.lta.cereda.eventengine.execution.RuleSet;
+import br.usp.poli.lta.cereda.eventengine.execution.Transformer;
+import br.usp.poli.lta.cereda.eventengine.model.Configuration;
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+/**
+ * Implementa a exploração não determinística de um motor de eventos. Em vez de
+ * escolher uma única regra por meio da resolução de regras, cada evento é
+ * consumido por todas as regras aplicáveis a cada configuração ativa, sobre
+ * cópias independentes da configuração; as configurações resultantes iguais
+ * são unificadas, de acordo com a igualdade de tabelas. As configurações sem
+ * regras aplicáveis deixam de estar ativas. As configurações ativas são
+ * processadas em paralelo, e o número de configurações ativas é limitado. O
+ * evento corrente é compartilhado entre as configurações ativas e não deve
+ * ser alterado pelas ações; os eventos de saída gerados durante a exploração
+ * são descartados.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Explorer {
+
+    // conjunto de regras do motor
+    private final RuleSet rules;
+
+    // ambiente de execução e métodos do motor
+    private final Map<String, Object> environment;
+    private final Map<String, Object> methods;
+
+    // conjunto de tarefas, potencialmente inválido
+    private final ForkJoinPool pool;
+
+    // número máximo de configurações ativas
+    private final int bound;
+
+    // contextos de avaliação e transformação
+    // de cada linha de execução
+    private final ThreadLocal<Worker> workers;
+
+    // configurações ativas, sem repetições
+    private Set<Configuration> live;
+
+    /**
+     * Construtor. A exploração parte de uma cópia da configuração corrente do
+     * motor de eventos, que não é alterado.
+     *
+     * @param engine Motor de eventos.
+     * @param pool Conjunto de tarefas ou uma referência inválida, caso as
+     * configurações ativas devam ser processadas sequencialmente.
+     * @param bound Número máximo de configurações ativas.
+     */
+    public Explorer(Engine engine, ForkJoinPool pool, int bound) {
+        this.rules = engine.getRuleSet();
+        this.environment = engine.getEnvironment();
+        this.methods = engine.getMethods();
+        this.pool = pool;
+        this.bound = bound;
+        this.workers = ThreadLocal.withInitial(Worker::new);
+        this.live = new LinkedHashSet<>();
+        this.live.add(engine.getConfiguration().snapshot());
+    }
+
+    /**
+     * Obtém as configurações ativas.
+     *
+     * @return Conjunto de configurações ativas, na ordem em que foram
+     * obtidas.
+     */
+    public Set<Configuration> getConfigurations() {
+        return Collections.unmodifiableSet(live);
+    }
+
+    /**
+     * Consome o evento, aplicando todas as regras aplicáveis a cada
+     * configuração ativa.
+     *
+     * @param event Evento a ser consumido.
+     * @return Valor lógico indicando se ainda existem configurações ativas.
+     * @throws IllegalStateException O número de configurações ativas excede
+     * o limite; neste caso, as configurações ativas não são alteradas.
+     */
+    public boolean consume(Event event) {
+        Configuration[] current = live.toArray(new Configuration[0]);
+        List<List<Configuration>> results = new ArrayList<>(current.length);
+        for (int i = 0; i < current.length; i++) {
+            results.add(null);
+        }
+        Step step = new Step(current, event, results, 0, current.length);
+        if (pool != null && current.length > 1) {
+            pool.invoke(step);
+        } else {
+            step.compute();
+        }
+
+        // unifica as configurações resultantes,
+        // na ordem das configurações de origem
+        // e das regras aplicadas
+        Set<Configuration> next = new LinkedHashSet<>();
+        for (List<Configuration> result : results) {
+            for (Configuration configuration : result) {
+                if (next.add(configuration) && next.size() > bound) {
+                    throw new IllegalStateException("O número de"
+                            + " configurações ativas excedeu o limite de "
+                            + bound + ".");
+                }
+            }
+        }
+        live = next;
+        return !live.isEmpty();
+    }
+
+    /**
+     * Consome, em ordem, os eventos informados, interrompendo a exploração
+     * caso não existam mais configurações ativas.
+     *
+     * @param events Eventos a serem consumidos.
+     * @return Valor lógico indicando se ainda existem configurações ativas.
+     */
+    public boolean consumeAll(Iterable<Event> events) {
+        for (Event event : events) {
+            if (!consume(event)) {
+                return false;
+            }
+        }
+        return !live.isEmpty();
+    }
+
+    /**
+     * Implementa os contextos de avaliação e transformação de uma linha de
+     * execução.
+     */
+    private final class Worker {
+
+        // contexto de avaliação das condições
+        private final Evaluation evaluation;
+
+        // transformador reutilizado
+        private final Transformer transformer;
+
+        /**
+         * Construtor.
+         */
+        Worker() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("environment", environment);
+            this.evaluation = rules.evaluation();
+            this.transformer = new Transformer(new MapVariableResolverFactory(
+                    map, new MapVariableResolverFactory(methods)));
+        }
+
+        /**
+         * Aplica todas as regras aplicáveis à configuração informada, cada
+         * qual sobre uma cópia da configuração.
+         *
+         * @param configuration Configuração ativa.
+         * @param event Evento corrente.
+         * @return Configurações resultantes, potencialmente vazia.
+         */
+        List<Configuration> step(Configuration configuration, Event event) {
+            List<CompiledRule> selected = new ArrayList<>(rules.select(
+                    configuration, event, evaluation, null));
+            List<Configuration> result = new ArrayList<>(selected.size());
+            for (CompiledRule rule : selected) {
+                transformer.transform(configuration.snapshot(), event,
+                        rule.getActions());
+                result.add(transformer.getConfiguration());
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Implementa a tarefa de processamento de um intervalo de configurações
+     * ativas.
+     */
+    private final class Step extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // configurações ativas e evento corrente
+        private final transient Configuration[] configurations;
+        private final transient Event event;
+
+        // configurações resultantes de cada
+        // configuração ativa
+        private final transient List<List<Configuration>> results;
+
+        // intervalo de configurações
+        private final int from;
+        private final int to;
+
+        /**
+         * Construtor.
+         *
+         * @param configurations Configurações ativas.
+         * @param event Evento corrente.
+         * @param results Configurações resultantes.
+         * @param from Posição inicial, inclusiva.
+         * @param to Posição final, exclusiva.
+         */
+        Step(Configuration[] configurations, Event event,
+                List<List<Configuration>> results, int from, int to) {
+            this.configurations = configurations;
+            this.event = event;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Step(configurations, event, results, from,
+                        middle), new Step(configurations, event, results,
+                                middle, to));
+                return;
+            }
+            Worker worker = workers.get();
+            for (int i = from; i < to; i++) {
+                results.set(i, worker.step(configurations[i], event));
+            }
+        }
+
+    }
+
+}
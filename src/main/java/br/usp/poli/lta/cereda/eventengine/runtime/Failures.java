@@ -0,0 +1,121 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.BatchException;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Implementa o registro das falhas ocorridas no consumo assíncrono de eventos
+ * e a entrega resiliente de lotes de eventos. A primeira falha ainda não
+ * reportada é mantida, e as falhas seguintes são a ela anexadas como falhas
+ * suprimidas, até que sejam reportadas ao chamador. A verificação de falhas
+ * é uma leitura volátil, sem bloqueios; o monitor do registro é utilizado
+ * apenas no registro e na retirada de falhas.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+final class Failures {
+
+    // primeira falha ainda não
+    // reportada, potencialmente inválida
+    private volatile RuntimeException failure;
+
+    /**
+     * Entrega o lote de eventos ao consumidor informado. Caso o consumidor
+     * falhe e informe, por meio de {@link BatchException}, a posição do
+     * evento com falha, a falha é registrada e a entrega prossegue a partir
+     * do evento seguinte; demais falhas são registradas e encerram a entrega,
+     * pois a posição dos eventos não consumidos é desconhecida.
+     *
+     * @param batch Lote de eventos.
+     * @param sink Consumidor do lote de eventos.
+     */
+    void deliver(List<Event> batch, Consumer<List<Event>> sink) {
+        int from = 0;
+        while (from < batch.size()) {
+            List<Event> events = from == 0 ? batch
+                    : batch.subList(from, batch.size());
+            try {
+                sink.accept(events);
+                return;
+            } catch (BatchException exception) {
+                record(exception);
+                if (exception.getEvents() != events) {
+                    return;
+                }
+                from = from + exception.getIndex() + 1;
+            } catch (RuntimeException exception) {
+                record(exception);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registra a falha informada.
+     *
+     * @param exception Falha ocorrida.
+     */
+    synchronized void record(RuntimeException exception) {
+        if (failure == null) {
+            failure = exception;
+        } else if (failure != exception) {
+            failure.addSuppressed(exception);
+        }
+    }
+
+    /**
+     * Obtém a primeira falha ainda não reportada.
+     *
+     * @return Primeira falha ou uma referência inválida.
+     */
+    RuntimeException get() {
+        return failure;
+    }
+
+    /**
+     * Reporta ao chamador as falhas registradas, caso existam, que deixam de
+     * ser mantidas.
+     *
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa e falhas suprimidas.
+     */
+    void rethrow() {
+        if (failure == null) {
+            return;
+        }
+        RuntimeException exception;
+        synchronized (this) {
+            exception = failure;
+            failure = null;
+        }
+        if (exception != null) {
+            throw new IllegalStateException("O consumo assíncrono de"
+                    + " eventos falhou.", exception);
+        }
+    }
+
+}
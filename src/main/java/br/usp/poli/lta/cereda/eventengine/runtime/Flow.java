@@ -0,0 +1,123 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+/**
+ * Define as interfaces de fluxos reativos com controle de demanda, nos moldes
+ * das interfaces equivalentes da plataforma Java a partir da versão 9. Como o
+ * motor de eventos é compilado para a versão 8, as interfaces são definidas
+ * aqui com as mesmas assinaturas e semântica, permitindo sua adaptação direta.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Flow {
+
+    /**
+     * Construtor privado.
+     */
+    private Flow() {
+    }
+
+    /**
+     * Define um produtor de elementos, entregues aos assinantes de acordo com
+     * a demanda informada por cada um.
+     *
+     * @param <T> Tipo dos elementos produzidos.
+     */
+    @FunctionalInterface
+    public static interface Publisher<T> {
+
+        /**
+         * Adiciona um assinante ao produtor.
+         *
+         * @param subscriber Assinante.
+         */
+        public void subscribe(Subscriber<? super T> subscriber);
+
+    }
+
+    /**
+     * Define um assinante de elementos.
+     *
+     * @param <T> Tipo dos elementos recebidos.
+     */
+    public static interface Subscriber<T> {
+
+        /**
+         * Recebe a assinatura, antes de qualquer outro sinal.
+         *
+         * @param subscription Assinatura.
+         */
+        public void onSubscribe(Subscription subscription);
+
+        /**
+         * Recebe o próximo elemento, dentro da demanda solicitada.
+         *
+         * @param item Elemento.
+         */
+        public void onNext(T item);
+
+        /**
+         * Recebe a falha que encerra o fluxo.
+         *
+         * @param throwable Falha.
+         */
+        public void onError(Throwable throwable);
+
+        /**
+         * Recebe o sinal de encerramento do fluxo.
+         */
+        public void onComplete();
+
+    }
+
+    /**
+     * Define a assinatura que liga um produtor a um assinante.
+     */
+    public static interface Subscription {
+
+        /**
+         * Solicita ao produtor até o número informado de novos elementos.
+         *
+         * @param n Número de elementos, necessariamente positivo.
+         */
+        public void request(long n);
+
+        /**
+         * Cancela a assinatura.
+         */
+        public void cancel();
+
+    }
+
+    /**
+     * Define um componente que é, ao mesmo tempo, assinante e produtor.
+     *
+     * @param <T> Tipo dos elementos recebidos.
+     * @param <R> Tipo dos elementos produzidos.
+     */
+    public static interface Processor<T, R> extends Subscriber<T>,
+            Publisher<R> {
+    }
+
+}
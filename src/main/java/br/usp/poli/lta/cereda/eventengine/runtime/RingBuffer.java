@@ -0,0 +1,243 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Implementa um anel de eventos pré-alocado, com múltiplos produtores e um
+ * único consumidor. Os produtores reservam posições do anel por meio de
+ * operações atômicas, sem bloqueios; uma linha de execução dedicada retira os
+ * eventos publicados, em ordem de reserva, e os entrega ao consumidor em
+ * lotes, tipicamente o consumo em lote de um motor de eventos.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class RingBuffer {
+
+    // posições do anel
+    private final AtomicReferenceArray<Event> slots;
+
+    // números de sequência de cada posição: a
+    // posição está livre para a reserva de
+    // número n quando seu número é n, e contém
+    // um evento publicado quando é n + 1
+    private final AtomicLongArray sequences;
+
+    // máscara de posição do anel
+    private final int mask;
+
+    // próxima reserva dos produtores, cujo
+    // bit de sinal indica o encerramento
+    // do anel, impedindo novas reservas
+    private final AtomicLong tail;
+
+    // próxima posição do consumidor
+    private volatile long head;
+
+    // estratégia de espera
+    private final WaitStrategy strategy;
+
+    // consumidor dos lotes de eventos
+    private final Consumer<List<Event>> sink;
+
+    // linha de execução do consumidor
+    private final Thread worker;
+
+    // falhas ocorridas no consumo
+    private final Failures failures;
+
+    /**
+     * Construtor. A capacidade é arredondada para a próxima potência de dois
+     * e a linha de execução do consumidor é iniciada imediatamente.
+     *
+     * @param name Nome do anel.
+     * @param capacity Capacidade do anel.
+     * @param strategy Estratégia de espera dos produtores e do consumidor.
+     * @param sink Consumidor dos lotes de eventos.
+     */
+    public RingBuffer(String name, int capacity, WaitStrategy strategy,
+            Consumer<List<Event>> sink) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("A capacidade do anel é"
+                    + " inválida.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.strategy = strategy;
+        this.sink = sink;
+        this.failures = new Failures();
+        this.worker = new Thread(this::run, "eventengine-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Publica um evento no anel, aguardando, de acordo com a estratégia de
+     * espera, enquanto o anel estiver cheio.
+     *
+     * @param event Evento a ser publicado.
+     * @throws IllegalStateException O anel foi encerrado ou ocorreram falhas
+     * no consumo de eventos anteriores, informadas como causa.
+     */
+    public void publish(Event event) {
+        while (!offer(event)) {
+            strategy.idle();
+        }
+    }
+
+    /**
+     * Tenta publicar um evento no anel, sem aguardar.
+     *
+     * @param event Evento a ser publicado.
+     * @return Valor lógico indicando se o evento foi publicado ou se o anel
+     * estava cheio.
+     * @throws IllegalStateException O anel foi encerrado ou ocorreram falhas
+     * no consumo de eventos anteriores, informadas como causa.
+     */
+    public boolean offer(Event event) {
+        failures.rethrow();
+        while (true) {
+            long position = tail.get();
+            if (position < 0) {
+                throw new IllegalStateException("O anel foi encerrado.");
+            }
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Encerra o anel, aguardando o consumo dos eventos publicados.
+     *
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa.
+     */
+    public void shutdown() {
+
+        // o encerramento é marcado na própria
+        // reserva, de tal modo que nenhuma
+        // reserva é efetivada após a marcação
+        tail.getAndUpdate((long position) -> position | Long.MIN_VALUE);
+        try {
+            worker.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        failures.rethrow();
+    }
+
+    /**
+     * Obtém a capacidade do anel.
+     *
+     * @return Capacidade do anel.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Obtém o número aproximado de eventos pendentes no anel.
+     *
+     * @return Número de eventos pendentes.
+     */
+    public int pending() {
+        return (int) Math.max(0, (tail.get() & Long.MAX_VALUE) - head);
+    }
+
+    /**
+     * Obtém a primeira falha ocorrida no consumo de eventos e ainda não
+     * reportada, à qual as falhas seguintes são anexadas como falhas
+     * suprimidas. As falhas são reportadas, e deixam de ser mantidas, na
+     * próxima submissão, espera ou encerramento.
+     *
+     * @return Primeira falha ou uma referência inválida.
+     */
+    public RuntimeException getFailure() {
+        return failures.get();
+    }
+
+    /**
+     * Consome os eventos publicados, em ordem, até o encerramento do anel e o
+     * esvaziamento das posições reservadas. Todos os eventos disponíveis são
+     * retirados do anel e entregues ao consumidor em um único lote; em caso
+     * de falha, a entrega do lote prossegue a partir do evento seguinte ao
+     * evento com falha, quando informado.
+     */
+    private void run() {
+        List<Event> batch = new ArrayList<>(mask + 1);
+        long position = head;
+        while (true) {
+
+            // retira os eventos publicados
+            // em posições consecutivas
+            while (batch.size() <= mask) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                batch.add(slots.get(index));
+                slots.lazySet(index, null);
+                sequences.set(index, position + mask + 1);
+                position++;
+            }
+            head = position;
+
+            if (batch.isEmpty()) {
+                if (tail.get() == (position | Long.MIN_VALUE)) {
+                    return;
+                }
+                strategy.idle();
+                continue;
+            }
+
+            failures.deliver(batch, sink);
+            batch.clear();
+        }
+    }
+
+}
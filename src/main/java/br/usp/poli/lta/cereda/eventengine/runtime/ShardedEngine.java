@@ -0,0 +1,347 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Implementa um motor de eventos particionado, composto por réplicas
+ * independentes de um motor de eventos. Cada evento é encaminhado à réplica
+ * determinada pelo valor de um atributo de particionamento e consumido pela
+ * linha de execução dedicada a essa réplica; eventos com o mesmo valor são,
+ * portanto, consumidos em ordem pela mesma réplica. Os eventos de saída de
+ * todas as réplicas são reunidos em uma única fila limitada, sujeita ao mesmo
+ * comportamento de fila cheia das réplicas; com o comportamento de espera, a
+ * fila de saída deve ser esvaziada pelo chamador para que as réplicas
+ * progridam.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class ShardedEngine {
+
+    // atributo de particionamento
+    private final String key;
+
+    // réplicas do motor de eventos
+    private final List<Engine> shards;
+
+    // estágios das réplicas
+    private final List<Stage> stages;
+
+    // fila limitada de eventos de saída
+    private final BlockingQueue<Event> output;
+
+    // comportamento da fila cheia
+    private final Backpressure backpressure;
+
+    // número de eventos de saída descartados
+    private final AtomicLong dropped;
+
+    /**
+     * Construtor. As réplicas são criadas pela fábrica informada, que recebe
+     * o índice da réplica e deve fornecer motores de eventos com as mesmas
+     * regras e configurações independentes. As linhas de execução das
+     * réplicas são iniciadas imediatamente. A fila de eventos de saída
+     * comporta o total das filas das réplicas.
+     *
+     * @param key Atributo de particionamento dos eventos.
+     * @param count Número de réplicas.
+     * @param factory Fábrica de réplicas do motor de eventos.
+     * @param capacity Capacidade da fila de cada réplica.
+     * @param backpressure Comportamento da fila cheia.
+     */
+    public ShardedEngine(String key, int count, IntFunction<Engine> factory,
+            int capacity, Backpressure backpressure) {
+        this(key, count, factory, capacity, backpressure,
+                (int) Math.min(Integer.MAX_VALUE, (long) capacity * count));
+    }
+
+    /**
+     * Construtor. As réplicas são criadas pela fábrica informada, que recebe
+     * o índice da réplica e deve fornecer motores de eventos com as mesmas
+     * regras e configurações independentes; as réplicas podem compartilhar
+     * um mesmo conjunto de regras compilado, seguro entre linhas de execução,
+     * cujas estatísticas de ordenação adaptativa são então acumuladas em
+     * conjunto. As linhas de execução das réplicas são iniciadas
+     * imediatamente; caso a criação de uma réplica
+     * falhe, as réplicas já iniciadas são encerradas.
+     *
+     * @param key Atributo de particionamento dos eventos.
+     * @param count Número de réplicas.
+     * @param factory Fábrica de réplicas do motor de eventos.
+     * @param capacity Capacidade da fila de cada réplica.
+     * @param backpressure Comportamento das filas cheias, das réplicas e de
+     * eventos de saída.
+     * @param outputCapacity Capacidade da fila de eventos de saída.
+     */
+    public ShardedEngine(String key, int count, IntFunction<Engine> factory,
+            int capacity, Backpressure backpressure, int outputCapacity) {
+        if (count < 1) {
+            throw new IllegalArgumentException("O número de réplicas deve"
+                    + " ser positivo.");
+        }
+        this.key = key;
+        this.output = new ArrayBlockingQueue<>(outputCapacity);
+        this.backpressure = backpressure;
+        this.dropped = new AtomicLong();
+        List<Engine> engines = new ArrayList<>(count);
+        List<Stage> list = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                Engine engine = factory.apply(i);
+                engines.add(engine);
+                list.add(new Stage(engine.getIdentifier() + "-" + i,
+                        capacity, backpressure, (List<Event> batch)
+                        -> consume(engine, batch)));
+            }
+        } catch (RuntimeException exception) {
+
+            // as réplicas já criadas são
+            // encerradas antes da propagação
+            // da falha
+            RuntimeException failure = null;
+            for (Stage stage : list) {
+                failure = shutdown(stage::shutdown, failure);
+            }
+            for (Engine engine : engines) {
+                failure = shutdown(engine::shutdown, failure);
+            }
+            if (failure != null) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+        this.shards = Collections.unmodifiableList(engines);
+        this.stages = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Submete um evento à réplica correspondente ao valor do seu atributo de
+     * particionamento. Eventos sem o atributo são encaminhados à primeira
+     * réplica.
+     *
+     * @param event Evento a ser submetido.
+     */
+    public void submit(Event event) {
+        stages.get(shard(event.get(key))).submit(event);
+    }
+
+    /**
+     * Submete, em ordem, os eventos informados às réplicas correspondentes.
+     *
+     * @param events Eventos a serem submetidos.
+     */
+    public void submitAll(Iterable<Event> events) {
+        for (Event event : events) {
+            submit(event);
+        }
+    }
+
+    /**
+     * Obtém o índice da réplica correspondente ao valor informado do atributo
+     * de particionamento.
+     *
+     * @param value Valor do atributo de particionamento.
+     * @return Índice da réplica.
+     */
+    public int shard(Object value) {
+        int hash = Objects.hashCode(value);
+        hash = hash ^ (hash >>> 16);
+        return Math.floorMod(hash, shards.size());
+    }
+
+    /**
+     * Transfere os eventos de saída disponíveis para a coleção informada. Os
+     * eventos de uma mesma réplica mantêm sua ordem relativa.
+     *
+     * @param events Coleção de destino.
+     * @return Número de eventos transferidos.
+     */
+    public int drainTo(Collection<? super Event> events) {
+        return output.drainTo(events);
+    }
+
+    /**
+     * Obtém o número de eventos de saída descartados pela fila de saída
+     * cheia.
+     *
+     * @return Número de eventos de saída descartados.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Obtém a fila de eventos de saída de todas as réplicas.
+     *
+     * @return Fila de eventos de saída.
+     */
+    public BlockingQueue<Event> getOutput() {
+        return output;
+    }
+
+    /**
+     * Obtém as réplicas do motor de eventos. As réplicas não devem ser
+     * utilizadas diretamente antes do encerramento.
+     *
+     * @return Lista de réplicas.
+     */
+    public List<Engine> getShards() {
+        return shards;
+    }
+
+    /**
+     * Obtém os estágios das réplicas.
+     *
+     * @return Lista de estágios.
+     */
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * Encerra as réplicas, aguardando o consumo dos eventos pendentes. Todas
+     * as réplicas são encerradas, mesmo que algumas reportem falhas no
+     * consumo de eventos.
+     *
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa e falhas suprimidas.
+     */
+    public void shutdown() {
+        RuntimeException failure = null;
+        for (Stage stage : stages) {
+            failure = shutdown(stage::shutdown, failure);
+        }
+        for (Engine engine : shards) {
+            failure = shutdown(engine::shutdown, failure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Executa o encerramento informado, acumulando sua falha, caso exista,
+     * à falha anterior.
+     *
+     * @param action Encerramento.
+     * @param failure Falha anterior, potencialmente inválida.
+     * @return Primeira falha ocorrida, potencialmente inválida.
+     */
+    private static RuntimeException shutdown(Runnable action,
+            RuntimeException failure) {
+        try {
+            action.run();
+        } catch (RuntimeException exception) {
+            if (failure == null) {
+                return exception;
+            }
+            failure.addSuppressed(exception);
+        }
+        return failure;
+    }
+
+    /**
+     * Consome o lote de eventos na réplica informada e transfere os eventos
+     * de saída gerados, inclusive em caso de falha, para a fila de eventos de
+     * saída.
+     *
+     * @param engine Réplica do motor de eventos.
+     * @param batch Lote de eventos.
+     */
+    private void consume(Engine engine, List<Event> batch) {
+        try {
+            engine.consumeAll(batch);
+        } catch (RuntimeException exception) {
+            RuntimeException failure = shutdown(() -> collect(engine), null);
+            if (failure != null) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+        collect(engine);
+    }
+
+    /**
+     * Transfere os eventos de saída da réplica informada para a fila de
+     * eventos de saída, respeitando o comportamento definido para a fila
+     * cheia.
+     *
+     * @param engine Réplica do motor de eventos.
+     */
+    private void collect(Engine engine) {
+        List<Event> events = engine.getOutputEvents();
+        if (events.isEmpty()) {
+            return;
+        }
+        int i = 0;
+        try {
+            for (; i < events.size(); i++) {
+                Event event = events.get(i);
+                switch (backpressure) {
+                    case BLOCK:
+                        try {
+                            output.put(event);
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("A entrega do"
+                                    + " evento de saída foi interrompida.",
+                                    exception);
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        while (!output.offer(event)) {
+                            if (output.poll() != null) {
+                                dropped.incrementAndGet();
+                            }
+                        }
+                        break;
+                    case FAIL:
+                        if (!output.offer(event)) {
+                            dropped.addAndGet(events.size() - i);
+                            i = events.size();
+                            throw new IllegalStateException("A fila de"
+                                    + " eventos de saída está cheia.");
+                        }
+                        break;
+                }
+            }
+        } finally {
+
+            // os eventos entregues, ou descartados,
+            // são removidos da réplica
+            events.subList(0, i).clear();
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Implementa um estágio assíncrono, no qual os eventos submetidos são
+ * armazenados em uma fila limitada e consumidos, em ordem e em lotes, por uma
+ * linha de execução dedicada.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Stage {
+
+    // intervalo de verificação do
+    // encerramento, em milissegundos
+    private static final long INTERVAL = 50;
+
+    // fila limitada de eventos
+    private final BlockingQueue<Event> queue;
+
+    // capacidade da fila
+    private final int capacity;
+
+    // comportamento da fila cheia
+    private final Backpressure backpressure;
+
+    // consumidor dos lotes de eventos
+    private final Consumer<List<Event>> sink;
+
+    // linha de execução do estágio
+    private final Thread worker;
+
+    // número de eventos descartados
+    private final AtomicLong dropped;
+
+    // número de submissões em andamento,
+    // cujo bit de sinal indica o encerramento
+    // do estágio, impedindo novas submissões
+    private final AtomicLong state;
+
+    // falhas ocorridas no consumo
+    private final Failures failures;
+
+    /**
+     * Construtor. A linha de execução do estágio é iniciada imediatamente.
+     *
+     * @param name Nome do estágio.
+     * @param capacity Capacidade da fila.
+     * @param backpressure Comportamento da fila cheia.
+     * @param sink Consumidor dos lotes de eventos.
+     */
+    public Stage(String name, int capacity, Backpressure backpressure,
+            Consumer<List<Event>> sink) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        this.sink = sink;
+        this.dropped = new AtomicLong();
+        this.state = new AtomicLong();
+        this.failures = new Failures();
+        this.worker = new Thread(this::run, "eventengine-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Submete um evento ao estágio, respeitando o comportamento definido para
+     * a fila cheia.
+     *
+     * @param event Evento a ser submetido.
+     * @throws IllegalStateException O estágio foi encerrado ou ocorreram
+     * falhas no consumo de eventos anteriores, informadas como causa.
+     */
+    public void submit(Event event) {
+        failures.rethrow();
+
+        // a submissão é registrada antes da
+        // inserção na fila, de tal modo que o
+        // estágio não é finalizado enquanto
+        // houver submissões em andamento
+        if (state.getAndUpdate((long current) -> current < 0
+                ? current : current + 1) < 0) {
+            throw new IllegalStateException("O estágio foi encerrado.");
+        }
+        try {
+            enqueue(event);
+        } finally {
+            state.decrementAndGet();
+        }
+    }
+
+    /**
+     * Insere um evento na fila, respeitando o comportamento definido para a
+     * fila cheia.
+     *
+     * @param event Evento a ser inserido.
+     */
+    private void enqueue(Event event) {
+        switch (backpressure) {
+            case BLOCK:
+                try {
+                    queue.put(event);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("A submissão do evento"
+                            + " foi interrompida.", exception);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case FAIL:
+                if (!queue.offer(event)) {
+                    throw new IllegalStateException("A fila do estágio"
+                            + " está cheia.");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Encerra o estágio, aguardando o consumo dos eventos pendentes,
+     * inclusive dos eventos de submissões em andamento. Submissões
+     * posteriores ao encerramento falham.
+     *
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa.
+     */
+    public void shutdown() {
+        state.getAndUpdate((long current) -> current | Long.MIN_VALUE);
+        try {
+            worker.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        failures.rethrow();
+    }
+
+    /**
+     * Obtém o número de eventos pendentes na fila.
+     *
+     * @return Número de eventos pendentes.
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Obtém o número de eventos descartados pela fila cheia.
+     *
+     * @return Número de eventos descartados.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Obtém a primeira falha ocorrida no consumo de eventos e ainda não
+     * reportada, à qual as falhas seguintes são anexadas como falhas
+     * suprimidas. As falhas são reportadas, e deixam de ser mantidas, na
+     * próxima submissão, espera ou encerramento.
+     *
+     * @return Primeira falha ou uma referência inválida.
+     */
+    public RuntimeException getFailure() {
+        return failures.get();
+    }
+
+    /**
+     * Consome os eventos da fila, em ordem, até o encerramento do estágio e o
+     * esvaziamento da fila. Os eventos disponíveis são retirados da fila e
+     * entregues ao consumidor em lotes, reduzindo a disputa com os
+     * produtores; em caso de falha, a entrega do lote prossegue a partir do
+     * evento seguinte ao evento com falha, quando informado.
+     */
+    private void run() {
+        List<Event> batch = new ArrayList<>(capacity);
+        while (true) {
+            Event event;
+            try {
+                event = queue.poll(INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                return;
+            }
+            if (event == null) {
+
+                // o estágio é finalizado apenas após
+                // o encerramento, a conclusão das
+                // submissões em andamento e o
+                // esvaziamento da fila
+                if (state.get() == Long.MIN_VALUE && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(event);
+            queue.drainTo(batch, capacity - 1);
+            failures.deliver(batch, sink);
+            batch.clear();
+        }
+    }
+
+}
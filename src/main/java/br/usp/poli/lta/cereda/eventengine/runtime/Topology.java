@@ -0,0 +1,407 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import br.usp.poli.lta.cereda.eventengine.model.Engine;
+import br.usp.poli.lta.cereda.eventengine.model.Event;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Implementa uma topologia de motores de eventos na forma de um grafo
+ * acíclico dirigido. Os eventos de saída de um motor são encaminhados, de
+ * acordo com o critério de cada aresta, a um ou mais motores subsequentes,
+ * e um motor pode receber eventos de vários motores antecedentes. Cada aresta
+ * tem sua própria fila; os motores com eventos pendentes são executados em
+ * um executor compartilhado, de tal modo que ramos independentes são
+ * processados concorrentemente, mas um mesmo motor nunca é executado por
+ * duas linhas de execução ao mesmo tempo. A topologia deve ser completamente
+ * definida antes da submissão de eventos; os motores não devem ter motores
+ * subsequentes próprios, nem ser utilizados diretamente enquanto a topologia
+ * estiver ativa. Um evento encaminhado a vários motores é compartilhado
+ * entre eles.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Topology {
+
+    // executor compartilhado
+    private final Executor executor;
+
+    // número máximo de eventos por execução
+    private final int batch;
+
+    // nós da topologia, indexados pelo motor
+    private final Map<Engine, Node> nodes;
+
+    // número de eventos enfileirados e
+    // de nós agendados para execução
+    private final AtomicLong pending;
+
+    // monitor de espera pelo esvaziamento
+    private final Object lock;
+
+    // falhas ocorridas no consumo
+    private final Failures failures;
+
+    /**
+     * Construtor.
+     *
+     * @param executor Executor compartilhado pelos motores de eventos.
+     * @param batch Número máximo de eventos consumidos por um motor em cada
+     * execução, antes de ceder a linha de execução aos demais motores.
+     */
+    public Topology(Executor executor, int batch) {
+        if (batch < 1) {
+            throw new IllegalArgumentException("O tamanho do lote deve ser"
+                    + " positivo.");
+        }
+        this.executor = executor;
+        this.batch = batch;
+        this.nodes = new IdentityHashMap<>();
+        this.pending = new AtomicLong();
+        this.lock = new Object();
+        this.failures = new Failures();
+    }
+
+    /**
+     * Adiciona o motor de eventos à topologia, caso ainda não exista.
+     *
+     * @param engine Motor de eventos.
+     * @return A própria topologia.
+     */
+    public Topology add(Engine engine) {
+        node(engine);
+        return this;
+    }
+
+    /**
+     * Encaminha todos os eventos de saída do primeiro motor ao segundo.
+     *
+     * @param from Motor de eventos de origem.
+     * @param to Motor de eventos de destino.
+     * @return A própria topologia.
+     */
+    public Topology connect(Engine from, Engine to) {
+        return connect(from, to, (Event event) -> true);
+    }
+
+    /**
+     * Encaminha ao segundo motor os eventos de saída do primeiro motor cujo
+     * atributo informado tem o valor informado.
+     *
+     * @param from Motor de eventos de origem.
+     * @param to Motor de eventos de destino.
+     * @param key Atributo dos eventos.
+     * @param value Valor do atributo.
+     * @return A própria topologia.
+     */
+    public Topology connect(Engine from, Engine to, String key,
+            Object value) {
+        return connect(from, to, (Event event) -> Objects.equals(
+                event.get(key), value));
+    }
+
+    /**
+     * Encaminha ao segundo motor os eventos de saída do primeiro motor que
+     * satisfazem o predicado informado.
+     *
+     * @param from Motor de eventos de origem.
+     * @param to Motor de eventos de destino.
+     * @param predicate Predicado de encaminhamento.
+     * @return A própria topologia.
+     */
+    public Topology connect(Engine from, Engine to,
+            Predicate<Event> predicate) {
+        Node source = node(from);
+        Node target = node(to);
+        Edge edge = new Edge(target, predicate);
+        source.outputs.add(edge);
+        target.inputs.add(edge);
+        return this;
+    }
+
+    /**
+     * Submete um evento ao motor de eventos informado, que deve pertencer à
+     * topologia.
+     *
+     * @param engine Motor de eventos.
+     * @param event Evento a ser submetido.
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos
+     * anteriores, informadas como causa.
+     */
+    public void submit(Engine engine, Event event) {
+        Node node = nodes.get(engine);
+        if (node == null) {
+            throw new IllegalArgumentException("O motor de eventos não"
+                    + " pertence à topologia.");
+        }
+        failures.rethrow();
+        node.entry.offer(event);
+    }
+
+    /**
+     * Submete, em ordem, os eventos informados ao motor de eventos
+     * informado.
+     *
+     * @param engine Motor de eventos.
+     * @param events Eventos a serem submetidos.
+     */
+    public void submitAll(Engine engine, Iterable<Event> events) {
+        for (Event event : events) {
+            submit(engine, event);
+        }
+    }
+
+    /**
+     * Aguarda até que todos os eventos submetidos e todos os eventos de saída
+     * por eles gerados tenham sido consumidos.
+     *
+     * @throws InterruptedException A espera foi interrompida.
+     * @throws IllegalStateException Ocorreram falhas no consumo de eventos,
+     * informadas como causa.
+     */
+    public void await() throws InterruptedException {
+        synchronized (lock) {
+            while (pending.get() != 0) {
+                lock.wait();
+            }
+        }
+        failures.rethrow();
+    }
+
+    /**
+     * Obtém o número de eventos enfileirados e de motores agendados.
+     *
+     * @return Número de eventos enfileirados e de motores agendados.
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * Obtém a primeira falha ocorrida no consumo de eventos e ainda não
+     * reportada, à qual as falhas seguintes são anexadas como falhas
+     * suprimidas. As falhas são reportadas, e deixam de ser mantidas, na
+     * próxima submissão ou espera.
+     *
+     * @return Primeira falha ou uma referência inválida.
+     */
+    public RuntimeException getFailure() {
+        return failures.get();
+    }
+
+    /**
+     * Obtém o nó do motor de eventos informado, criando-o caso não exista.
+     *
+     * @param engine Motor de eventos.
+     * @return Nó do motor de eventos.
+     */
+    private Node node(Engine engine) {
+        return nodes.computeIfAbsent(engine, Node::new);
+    }
+
+    /**
+     * Subtrai o valor informado do número de pendências, notificando as
+     * linhas de execução em espera caso não existam mais pendências.
+     *
+     * @param amount Valor a ser subtraído.
+     */
+    private void release(long amount) {
+        if (pending.addAndGet(-amount) == 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Implementa uma aresta da topologia, com sua própria fila de eventos.
+     */
+    private final class Edge {
+
+        // nó de destino
+        private final Node target;
+
+        // predicado de encaminhamento
+        private final Predicate<Event> predicate;
+
+        // fila de eventos da aresta
+        private final Queue<Event> queue;
+
+        /**
+         * Construtor.
+         *
+         * @param target Nó de destino.
+         * @param predicate Predicado de encaminhamento.
+         */
+        Edge(Node target, Predicate<Event> predicate) {
+            this.target = target;
+            this.predicate = predicate;
+            this.queue = new ConcurrentLinkedQueue<>();
+        }
+
+        /**
+         * Enfileira o evento e agenda o nó de destino.
+         *
+         * @param event Evento.
+         */
+        void offer(Event event) {
+            pending.incrementAndGet();
+            queue.offer(event);
+            target.schedule();
+        }
+
+    }
+
+    /**
+     * Implementa um nó da topologia, associado a um motor de eventos.
+     */
+    private final class Node {
+
+        // motor de eventos
+        private final Engine engine;
+
+        // aresta de entrada dos eventos submetidos
+        private final Edge entry;
+
+        // arestas de entrada e de saída
+        private final List<Edge> inputs;
+        private final List<Edge> outputs;
+
+        // lote de eventos a ser consumido
+        private final List<Event> events;
+
+        // indica se o nó está agendado
+        // ou em execução
+        private final AtomicBoolean scheduled;
+
+        // próxima aresta de entrada a ser
+        // drenada, alternando entre elas
+        private int cursor;
+
+        /**
+         * Construtor.
+         *
+         * @param engine Motor de eventos.
+         */
+        Node(Engine engine) {
+            this.engine = engine;
+            this.entry = new Edge(this, null);
+            this.inputs = new ArrayList<>();
+            this.outputs = new ArrayList<>();
+            this.events = new ArrayList<>(batch);
+            this.scheduled = new AtomicBoolean();
+            this.inputs.add(entry);
+        }
+
+        /**
+         * Agenda a execução do nó, caso ainda não esteja agendado.
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                pending.incrementAndGet();
+                executor.execute(this::run);
+            }
+        }
+
+        /**
+         * Consome um lote de eventos das arestas de entrada e encaminha os
+         * eventos de saída gerados às arestas de saída. Em caso de falha, o
+         * consumo prossegue a partir do evento seguinte ao evento com falha.
+         */
+        private void run() {
+            int size = 0;
+            try {
+                size = collect();
+                failures.deliver(events, engine::consumeAll);
+                List<Event> produced = engine.getOutputEvents();
+                for (int i = 0; i < produced.size(); i++) {
+                    Event event = produced.get(i);
+                    for (int j = 0; j < outputs.size(); j++) {
+                        Edge edge = outputs.get(j);
+                        if (edge.predicate.test(event)) {
+                            edge.offer(event);
+                        }
+                    }
+                }
+            } catch (RuntimeException exception) {
+                failures.record(exception);
+            } finally {
+                engine.clearOutputEvents();
+                events.clear();
+                scheduled.set(false);
+                if (available()) {
+                    schedule();
+                }
+                release(size + 1);
+            }
+        }
+
+        /**
+         * Retira, de forma alternada entre as arestas de entrada, até um lote
+         * de eventos.
+         *
+         * @return Número de eventos retirados.
+         */
+        private int collect() {
+            int idle = 0;
+            while (events.size() < batch && idle < inputs.size()) {
+                Event event = inputs.get(cursor).queue.poll();
+                cursor = (cursor + 1) % inputs.size();
+                if (event == null) {
+                    idle++;
+                } else {
+                    idle = 0;
+                    events.add(event);
+                }
+            }
+            return events.size();
+        }
+
+        /**
+         * Verifica se existem eventos nas arestas de entrada.
+         *
+         * @return Valor lógico indicando se existem eventos pendentes.
+         */
+        private boolean available() {
+            for (int i = 0; i < inputs.size(); i++) {
+                if (!inputs.get(i).queue.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.runtime;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Define o comportamento de uma linha de execução enquanto aguarda uma
+ * posição livre ou um evento disponível em um anel de eventos.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public enum WaitStrategy {
+
+    // a linha de execução permanece ativa,
+    // com a menor latência; adequada apenas
+    // quando há processadores dedicados
+    BUSY_SPIN {
+
+        @Override
+        void idle() {
+        }
+
+    },
+
+    // a linha de execução cede o
+    // processador a cada tentativa
+    YIELD {
+
+        @Override
+        void idle() {
+            Thread.yield();
+        }
+
+    },
+
+    // a linha de execução é suspensa por
+    // um breve intervalo a cada tentativa
+    PARK {
+
+        @Override
+        void idle() {
+            LockSupport.parkNanos(INTERVAL);
+        }
+
+    };
+
+    // intervalo de suspensão, em nanossegundos
+    private static final long INTERVAL = 50_000;
+
+    /**
+     * Aguarda, de acordo com a estratégia, antes de uma nova tentativa.
+     */
+    abstract void idle();
+
+}
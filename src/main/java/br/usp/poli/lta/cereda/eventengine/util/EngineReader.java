@@ -22,7 +22,9 @@ package br.usp.poli.lta.cereda.eventengine.util;
 
 import br.usp.poli.lta.cereda.eventengine.model.Engine;
 import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.EventPool;
 import java.io.File;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -50,4 +52,17 @@ public interface EngineReader {
      */
     public List<Event> toEvents(File file);
 
+    /**
+     * Retorna um iterador sobre os eventos do arquivo informado, lidos sob
+     * demanda e preenchidos em eventos obtidos do conjunto de eventos
+     * reutilizáveis. O consumidor dos eventos é responsável por sua
+     * devolução ao conjunto, tipicamente por meio do motor de eventos.
+     *
+     * @param file Arquivo informado.
+     * @param pool Conjunto de eventos reutilizáveis.
+     * @return Iterador sobre os eventos ou uma referência inválida, em caso
+     * de erro.
+     */
+    public Iterator<Event> toEvents(File file, EventPool pool);
+
 }
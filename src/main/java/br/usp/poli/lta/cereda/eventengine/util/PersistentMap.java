@@ -0,0 +1,718 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Implementa um mapa persistente, baseado em uma árvore de prefixos de códigos
+ * hash (HAMT), com compartilhamento estrutural. As alterações copiam apenas o
+ * caminho da raiz até o elemento alterado, com custo logarítmico, de tal modo
+ * que a bifurcação do mapa tem custo constante: o mapa original e o mapa
+ * bifurcado compartilham toda a estrutura existente e evoluem de forma
+ * independente. Os nós criados após a última bifurcação pertencem
+ * exclusivamente ao mapa e são alterados diretamente, sem cópia.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ * @param <K> Tipo das chaves.
+ * @param <V> Tipo dos valores.
+ */
+public class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    // número de bits do código hash
+    // consumidos em cada nível
+    private static final int BITS = 5;
+
+    // máscara de um nível
+    private static final int MASK = (1 << BITS) - 1;
+
+    // valor de uma busca sem sucesso
+    private static final Object NONE = new Object();
+
+    // marcador de posição que contém
+    // um nó descendente no lugar de
+    // um par chave/valor
+    private static final Object NODE = new Object();
+
+    // raiz da árvore, potencialmente inválida
+    private Node root;
+
+    // número de elementos
+    private int size;
+
+    // marca de propriedade dos nós que
+    // podem ser alterados diretamente
+    private Object edit;
+
+    /**
+     * Construtor.
+     */
+    public PersistentMap() {
+        this(null, 0);
+    }
+
+    /**
+     * Construtor, contendo os elementos do mapa informado.
+     *
+     * @param map Mapa de elementos.
+     */
+    public PersistentMap(Map<? extends K, ? extends V> map) {
+        this(null, 0);
+        putAll(map);
+    }
+
+    /**
+     * Construtor, compartilhando a árvore informada.
+     *
+     * @param root Raiz da árvore.
+     * @param size Número de elementos.
+     */
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+        this.edit = new Object();
+    }
+
+    /**
+     * Bifurca o mapa, em tempo constante. O mapa corrente e o mapa bifurcado
+     * compartilham a estrutura existente, mas as alterações posteriores em um
+     * deles não são visíveis no outro.
+     *
+     * @return Mapa bifurcado.
+     */
+    public PersistentMap<K, V> fork() {
+        freeze();
+        return new PersistentMap<>(root, size);
+    }
+
+    /**
+     * Obtém o número de elementos.
+     *
+     * @return Número de elementos.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Verifica se o mapa contém a chave informada.
+     *
+     * @param key Chave.
+     * @return Valor lógico informando se o mapa contém a chave.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && root.find(hash(key), key, 0) != NONE;
+    }
+
+    /**
+     * Obtém o valor associado à chave informada.
+     *
+     * @param key Chave.
+     * @return Valor associado à chave ou uma referência inválida, caso a
+     * chave não exista.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.find(hash(key), key, 0);
+        return value != NONE ? (V) value : null;
+    }
+
+    /**
+     * Associa o valor à chave informada.
+     *
+     * @param key Chave.
+     * @param value Valor.
+     * @return Valor anteriormente associado à chave ou uma referência
+     * inválida, caso a chave não exista.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Change change = new Change();
+        int hash = hash(key);
+        root = root == null
+                ? new Bitmap(edit, 0, new Object[0]).put(edit, hash, key,
+                        value, 0, change)
+                : root.put(edit, hash, key, value, 0, change);
+        if (change.added) {
+            size++;
+        }
+        return (V) change.previous;
+    }
+
+    /**
+     * Remove a chave informada.
+     *
+     * @param key Chave.
+     * @return Valor anteriormente associado à chave ou uma referência
+     * inválida, caso a chave não exista.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Change change = new Change();
+        root = root.remove(edit, hash(key), key, 0, change);
+        if (change.removed) {
+            size--;
+        }
+        return (V) change.previous;
+    }
+
+    /**
+     * Remove todos os elementos.
+     */
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Obtém o conjunto de elementos. A iteração percorre o estado do mapa no
+     * momento da criação do iterador; os elementos não podem ser alterados
+     * diretamente.
+     *
+     * @return Conjunto de elementos.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                freeze();
+                return new Entries(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                PersistentMap.this.clear();
+            }
+
+        };
+    }
+
+    /**
+     * Renova a marca de propriedade, de tal modo que os nós existentes passam
+     * a ser compartilhados e não são mais alterados diretamente.
+     */
+    private void freeze() {
+        edit = new Object();
+    }
+
+    /**
+     * Calcula o código hash da chave informada.
+     *
+     * @param key Chave.
+     * @return Código hash da chave.
+     */
+    private static int hash(Object key) {
+        return Objects.hashCode(key);
+    }
+
+    /**
+     * Obtém o bit correspondente ao código hash no nível informado.
+     *
+     * @param hash Código hash.
+     * @param shift Deslocamento do nível.
+     * @return Bit correspondente.
+     */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Cria um nó contendo os dois pares chave/valor informados, a partir do
+     * nível informado.
+     *
+     * @param edit Marca de propriedade.
+     * @param shift Deslocamento do nível.
+     * @param k1 Primeira chave.
+     * @param v1 Primeiro valor.
+     * @param h2 Código hash da segunda chave.
+     * @param k2 Segunda chave.
+     * @param v2 Segundo valor.
+     * @return Nó contendo os dois pares.
+     */
+    private static Node pair(Object edit, int shift, Object k1, Object v1,
+            int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2) {
+            return new Collision(edit, h1, new Object[]{k1, v1, k2, v2});
+        }
+        int b1 = bit(h1, shift);
+        int b2 = bit(h2, shift);
+        if (b1 == b2) {
+            return new Bitmap(edit, b1, new Object[]{NODE,
+                pair(edit, shift + BITS, k1, v1, h2, k2, v2)});
+        }
+        return new Bitmap(edit, b1 | b2, Integer.compareUnsigned(b1, b2) < 0
+                ? new Object[]{k1, v1, k2, v2}
+                : new Object[]{k2, v2, k1, v1});
+    }
+
+    /**
+     * Registra o efeito de uma alteração.
+     */
+    private static final class Change {
+
+        // valor anterior
+        private Object previous;
+
+        // indica se um par foi incluído
+        private boolean added;
+
+        // indica se um par foi removido
+        private boolean removed;
+
+    }
+
+    /**
+     * Define um nó da árvore.
+     */
+    private abstract static class Node {
+
+        // marca de propriedade do nó
+        protected final Object edit;
+
+        // pares chave/valor, alternados
+        protected Object[] array;
+
+        /**
+         * Construtor.
+         *
+         * @param edit Marca de propriedade.
+         * @param array Pares chave/valor.
+         */
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        /**
+         * Busca a chave informada.
+         *
+         * @param hash Código hash da chave.
+         * @param key Chave.
+         * @param shift Deslocamento do nível.
+         * @return Valor associado ou a marca de busca sem sucesso.
+         */
+        abstract Object find(int hash, Object key, int shift);
+
+        /**
+         * Associa o valor à chave informada.
+         *
+         * @param edit Marca de propriedade do mapa.
+         * @param hash Código hash da chave.
+         * @param key Chave.
+         * @param value Valor.
+         * @param shift Deslocamento do nível.
+         * @param change Efeito da alteração.
+         * @return Nó resultante, potencialmente o próprio nó.
+         */
+        abstract Node put(Object edit, int hash, Object key, Object value,
+                int shift, Change change);
+
+        /**
+         * Remove a chave informada.
+         *
+         * @param edit Marca de propriedade do mapa.
+         * @param hash Código hash da chave.
+         * @param key Chave.
+         * @param shift Deslocamento do nível.
+         * @param change Efeito da alteração.
+         * @return Nó resultante, potencialmente o próprio nó, ou uma
+         * referência inválida, caso o nó fique vazio.
+         */
+        abstract Node remove(Object edit, int hash, Object key, int shift,
+                Change change);
+
+    }
+
+    /**
+     * Implementa um nó indexado por um mapa de bits, no qual cada bit
+     * presente corresponde a um par chave/valor ou a um nó descendente.
+     */
+    private static final class Bitmap extends Node {
+
+        // mapa de bits das posições ocupadas
+        private int bitmap;
+
+        /**
+         * Construtor.
+         *
+         * @param edit Marca de propriedade.
+         * @param bitmap Mapa de bits.
+         * @param array Pares chave/valor.
+         */
+        Bitmap(Object edit, int bitmap, Object[] array) {
+            super(edit, array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Object find(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NONE;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            if (k == NODE) {
+                return ((Node) array[i + 1]).find(hash, key, shift + BITS);
+            }
+            return Objects.equals(k, key) ? array[i + 1] : NONE;
+        }
+
+        @Override
+        Node put(Object edit, int hash, Object key, Object value, int shift,
+                Change change) {
+            int bit = bit(hash, shift);
+            int i = index(bit);
+
+            // posição livre, na qual o
+            // par é incluído
+            if ((bitmap & bit) == 0) {
+                change.added = true;
+                Object[] next = new Object[array.length + 2];
+                System.arraycopy(array, 0, next, 0, i);
+                next[i] = key;
+                next[i + 1] = value;
+                System.arraycopy(array, i, next, i + 2, array.length - i);
+                Bitmap node = editable(edit);
+                node.bitmap = bitmap | bit;
+                node.array = next;
+                return node;
+            }
+
+            // posição contendo um nó descendente
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == NODE) {
+                Node child = ((Node) v).put(edit, hash, key, value,
+                        shift + BITS, change);
+                return child == v ? this : set(edit, i + 1, child);
+            }
+
+            // posição contendo a própria chave
+            if (Objects.equals(k, key)) {
+                change.previous = v;
+                return v == value ? this : set(edit, i + 1, value);
+            }
+
+            // posição contendo outra chave, substituída
+            // por um nó descendente com ambos os pares
+            change.added = true;
+            Bitmap node = editable(edit);
+            node.array[i] = NODE;
+            node.array[i + 1] = pair(edit, shift + BITS, k, v, hash, key,
+                    value);
+            return node;
+        }
+
+        @Override
+        Node remove(Object edit, int hash, Object key, int shift,
+                Change change) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == NODE) {
+                Node child = ((Node) v).remove(edit, hash, key,
+                        shift + BITS, change);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return set(edit, i + 1, child);
+                }
+            } else if (Objects.equals(k, key)) {
+                change.previous = v;
+                change.removed = true;
+            } else {
+                return this;
+            }
+
+            // a posição é removida
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, i);
+            System.arraycopy(array, i + 2, next, i, array.length - i - 2);
+            Bitmap node = editable(edit);
+            node.bitmap = bitmap ^ bit;
+            node.array = next;
+            return node;
+        }
+
+        /**
+         * Obtém a posição do par correspondente ao bit informado.
+         *
+         * @param bit Bit.
+         * @return Posição da chave no vetor de pares.
+         */
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) << 1;
+        }
+
+        /**
+         * Obtém uma versão alterável do nó: o próprio nó, caso pertença ao
+         * mapa, ou uma cópia.
+         *
+         * @param edit Marca de propriedade do mapa.
+         * @return Versão alterável do nó.
+         */
+        private Bitmap editable(Object edit) {
+            return this.edit == edit ? this
+                    : new Bitmap(edit, bitmap, array.clone());
+        }
+
+        /**
+         * Altera uma posição da versão alterável do nó.
+         *
+         * @param edit Marca de propriedade do mapa.
+         * @param i Posição.
+         * @param element Novo elemento.
+         * @return Versão alterada do nó.
+         */
+        private Bitmap set(Object edit, int i, Object element) {
+            Bitmap node = editable(edit);
+            node.array[i] = element;
+            return node;
+        }
+
+    }
+
+    /**
+     * Implementa um nó de colisão, contendo pares cujas chaves têm o mesmo
+     * código hash.
+     */
+    private static final class Collision extends Node {
+
+        // código hash comum
+        private final int hash;
+
+        /**
+         * Construtor.
+         *
+         * @param edit Marca de propriedade.
+         * @param hash Código hash comum.
+         * @param array Pares chave/valor.
+         */
+        Collision(Object edit, int hash, Object[] array) {
+            super(edit, array);
+            this.hash = hash;
+        }
+
+        @Override
+        Object find(int hash, Object key, int shift) {
+            int i = index(key);
+            return hash == this.hash && i >= 0 ? array[i + 1] : NONE;
+        }
+
+        @Override
+        Node put(Object edit, int hash, Object key, Object value, int shift,
+                Change change) {
+
+            // código hash distinto, de tal modo que
+            // o nó passa a ser descendente de um nó
+            // indexado por mapa de bits
+            if (hash != this.hash) {
+                return new Bitmap(edit, bit(this.hash, shift),
+                        new Object[]{NODE, this}).put(edit, hash, key,
+                                value, shift, change);
+            }
+
+            int i = index(key);
+            Object[] next;
+            if (i >= 0) {
+                change.previous = array[i + 1];
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                next = this.edit == edit ? array : array.clone();
+            } else {
+                change.added = true;
+                next = new Object[array.length + 2];
+                System.arraycopy(array, 0, next, 0, array.length);
+                i = array.length;
+                next[i] = key;
+            }
+            next[i + 1] = value;
+            if (this.edit == edit) {
+                array = next;
+                return this;
+            }
+            return new Collision(edit, hash, next);
+        }
+
+        @Override
+        Node remove(Object edit, int hash, Object key, int shift,
+                Change change) {
+            int i = hash == this.hash ? index(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            change.previous = array[i + 1];
+            change.removed = true;
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, i);
+            System.arraycopy(array, i + 2, next, i, array.length - i - 2);
+            if (this.edit == edit) {
+                array = next;
+                return this;
+            }
+            return new Collision(edit, hash, next);
+        }
+
+        /**
+         * Obtém a posição da chave informada.
+         *
+         * @param key Chave.
+         * @return Posição da chave no vetor de pares ou um valor negativo,
+         * caso a chave não exista.
+         */
+        private int index(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (Objects.equals(array[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * Implementa o iterador de elementos, percorrendo a árvore em
+     * profundidade a partir da raiz informada.
+     */
+    private final class Entries implements Iterator<Map.Entry<K, V>> {
+
+        // pilha de nós e posições correntes,
+        // limitada pela altura da árvore
+        private final Node[] nodes = new Node[(32 / BITS) + 2];
+        private final int[] positions = new int[(32 / BITS) + 2];
+        private int depth;
+
+        // próximo elemento e último
+        // elemento obtido
+        private Map.Entry<K, V> next;
+        private Map.Entry<K, V> last;
+
+        /**
+         * Construtor.
+         *
+         * @param root Raiz da árvore, potencialmente inválida.
+         */
+        Entries(Node root) {
+            depth = -1;
+            if (root != null) {
+                nodes[0] = root;
+                positions[0] = 0;
+                depth = 0;
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            advance();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            PersistentMap.this.remove(last.getKey());
+            last = null;
+        }
+
+        /**
+         * Avança até o próximo par chave/valor.
+         */
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                int i = positions[depth];
+                if (i >= node.array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                Object k = node.array[i];
+                if (k == NODE) {
+                    depth++;
+                    nodes[depth] = (Node) node.array[i + 1];
+                    positions[depth] = 0;
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) k,
+                            (V) node.array[i + 1]);
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.util;
+
+import br.usp.poli.lta.cereda.eventengine.model.Rule;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Implementa um esquema de atributos, no qual cada chave conhecida é
+ * associada a uma posição fixa. O esquema é tipicamente obtido a partir das
+ * chaves referenciadas pelas condições e ações de um conjunto de regras, e
+ * utilizado por mapas de atributos baseados em vetores de posições.
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class Schema {
+
+    // acessos constantes a atributos da
+    // configuração ou do evento, por índice,
+    // por propriedade ou por métodos do mapa
+    private static final Pattern ACCESS = Pattern.compile(
+            "\\b(?:configuration|event)\\s*(?:\\[\\s*(?:'([^'\\\\]*)'|"
+            + "\"([^\"\\\\]*)\")\\s*\\]|\\.\\s*([A-Za-z_$][\\w$]*)"
+            + "(?![\\w$]|\\s*\\()|\\.\\s*(?:get|put|remove|containsKey"
+            + "|getOrDefault|putIfAbsent)\\s*\\(\\s*(?:'([^'\\\\]*)'|"
+            + "\"([^\"\\\\]*)\"))");
+
+    // chaves, na ordem das posições
+    private final String[] keys;
+
+    // tabela de dispersão das chaves, com
+    // endereçamento aberto, e as posições
+    // correspondentes
+    private final String[] table;
+    private final int[] slots;
+
+    // máscara da tabela de dispersão
+    private final int mask;
+
+    /**
+     * Construtor.
+     *
+     * @param keys Coleção de chaves; as repetições são descartadas.
+     */
+    public Schema(Collection<String> keys) {
+        Set<String> distinct = new LinkedHashSet<>(keys);
+        this.keys = distinct.toArray(new String[0]);
+        int capacity = Integer.highestOneBit(Math.max(1,
+                this.keys.length) * 2) << 1;
+        this.table = new String[capacity];
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < this.keys.length; i++) {
+            int position = spread(this.keys[i].hashCode()) & mask;
+            while (table[position] != null) {
+                position = (position + 1) & mask;
+            }
+            table[position] = this.keys[i];
+            slots[position] = i;
+        }
+    }
+
+    /**
+     * Obtém o esquema das chaves da configuração e do evento referenciadas
+     * de forma constante pelas condições e ações das regras informadas.
+     *
+     * @param rules Coleção de regras.
+     * @return Esquema das chaves referenciadas.
+     */
+    public static Schema of(Collection<Rule> rules) {
+        List<String> keys = new ArrayList<>();
+        for (Rule rule : rules) {
+            collect(rule.getConditions(), keys);
+            collect(rule.getActions(), keys);
+        }
+        return new Schema(keys);
+    }
+
+    /**
+     * Obtém a posição da chave informada.
+     *
+     * @param key Chave.
+     * @return Posição da chave ou -1, caso a chave não pertença ao esquema.
+     */
+    public int slot(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int position = spread(key.hashCode()) & mask;
+        String candidate;
+        while ((candidate = table[position]) != null) {
+            if (candidate == key || candidate.equals(key)) {
+                return slots[position];
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Obtém a chave da posição informada.
+     *
+     * @param slot Posição.
+     * @return Chave.
+     */
+    public String key(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Obtém o número de chaves do esquema.
+     *
+     * @return Número de chaves.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Obtém as chaves do esquema, na ordem das posições.
+     *
+     * @return Lista de chaves.
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * Cria um novo mapa de atributos baseado no esquema.
+     *
+     * @return Novo mapa de atributos.
+     */
+    public SlotMap map() {
+        return new SlotMap(this);
+    }
+
+    /**
+     * Coleta as chaves acessadas de forma constante nas expressões
+     * informadas.
+     *
+     * @param expressions Expressões.
+     * @param keys Lista de chaves a ser preenchida.
+     */
+    private static void collect(Collection<String> expressions,
+            List<String> keys) {
+        for (String expression : expressions) {
+            Matcher matcher = ACCESS.matcher(expression);
+            while (matcher.find()) {
+                for (int group = 1; group <= 5; group++) {
+                    if (matcher.group(group) != null) {
+                        keys.add(matcher.group(group));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Espalha os bits do código hash.
+     *
+     * @param hash Código hash.
+     * @return Código hash espalhado.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
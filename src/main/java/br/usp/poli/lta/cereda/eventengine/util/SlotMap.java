@@ -0,0 +1,634 @@
+/**
+ * ------------------------------------------------------
+ *    Laboratório de Linguagens e Técnicas Adaptativas
+ *       Escola Politécnica, Universidade São Paulo
+ * ------------------------------------------------------
+ *
+ * This program is free software: you can redistribute it
+ * and/or modify  it under the  terms of the  GNU General
+ * Public  License  as  published by  the  Free  Software
+ * Foundation, either  version 3  of the License,  or (at
+ * your option) any later version.
+ *
+ * This program is  distributed in the hope  that it will
+ * be useful, but WITHOUT  ANY WARRANTY; without even the
+ * implied warranty  of MERCHANTABILITY or FITNESS  FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ *
+ */
+package br.usp.poli.lta.cereda.eventengine.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Implementa um mapa de atributos baseado em um esquema: os valores das
+ * chaves do esquema são armazenados em um vetor, na posição correspondente a
+ * cada chave, e as demais chaves, em um mapa auxiliar criado sob demanda. A
+ * interface de mapa é mantida, de tal modo que o mapa pode ser utilizado como
+ * mapa de atributos de eventos e configurações, inclusive pelas expressões
+ * das regras; adicionalmente, os valores podem ser acessados diretamente pela
+ * posição da chave no esquema.
+ *
+ * <p>Valores dos tipos {@code int}, {@code long}, {@code double} e
+ * {@code boolean} são armazenados em sua forma primitiva. Os métodos de acesso
+ * tipados (por exemplo, {@link #getInt(String)} e {@link #putLong(String,
+ * long)}) e os métodos de incremento não alocam objetos; a forma encapsulada
+ * do valor é criada apenas quando o valor é obtido por meio da interface de
+ * mapa e, então, mantida até a próxima alteração.</p>
+ *
+ * @author Paulo Roberto Massa Cereda
+ * @version 1.3
+ * @since 1.3
+ */
+public class SlotMap extends AbstractMap<String, Object> {
+
+    // marca de posição vazia
+    private static final Object EMPTY = new Object();
+
+    // marca de valor primitivo ainda
+    // sem forma encapsulada
+    private static final Object PRIMITIVE = new Object();
+
+    // tipos dos valores das posições
+    private static final byte OBJECT = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+
+    // esquema de atributos
+    private final Schema schema;
+
+    // valores das chaves do esquema, tipos
+    // e representações primitivas
+    private final Object[] values;
+    private final byte[] kinds;
+    private final long[] bits;
+
+    // chaves fora do esquema,
+    // potencialmente inválido
+    private Map<String, Object> overflow;
+
+    // número de posições ocupadas
+    private int occupied;
+
+    /**
+     * Construtor.
+     *
+     * @param schema Esquema de atributos.
+     */
+    public SlotMap(Schema schema) {
+        this.schema = schema;
+        this.values = new Object[schema.size()];
+        this.kinds = new byte[schema.size()];
+        this.bits = new long[schema.size()];
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Construtor, contendo os elementos do mapa informado.
+     *
+     * @param schema Esquema de atributos.
+     * @param map Mapa de elementos.
+     */
+    public SlotMap(Schema schema, Map<String, Object> map) {
+        this(schema);
+        putAll(map);
+    }
+
+    /**
+     * Obtém o esquema de atributos.
+     *
+     * @return Esquema de atributos.
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Obtém o valor da posição informada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @return Valor da posição ou uma referência inválida, caso a posição
+     * esteja vazia.
+     */
+    public Object get(int slot) {
+        Object value = values[slot];
+        if (value == PRIMITIVE) {
+            value = box(slot);
+            values[slot] = value;
+        }
+        return value == EMPTY ? null : value;
+    }
+
+    /**
+     * Define o valor da posição informada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @param value Valor.
+     * @return Valor anterior ou uma referência inválida.
+     */
+    public Object put(int slot, Object value) {
+        Object previous = values[slot] == PRIMITIVE ? box(slot)
+                : values[slot];
+        if (value instanceof Integer) {
+            bits[slot] = (Integer) value;
+            kinds[slot] = INT;
+        } else if (value instanceof Long) {
+            bits[slot] = (Long) value;
+            kinds[slot] = LONG;
+        } else if (value instanceof Double) {
+            bits[slot] = Double.doubleToRawLongBits((Double) value);
+            kinds[slot] = DOUBLE;
+        } else if (value instanceof Boolean) {
+            bits[slot] = (Boolean) value ? 1 : 0;
+            kinds[slot] = BOOLEAN;
+        } else {
+            kinds[slot] = OBJECT;
+        }
+        values[slot] = value;
+        if (previous == EMPTY) {
+            occupied++;
+            return null;
+        }
+        return previous;
+    }
+
+    /**
+     * Obtém o valor inteiro associado à chave informada.
+     *
+     * @param key Chave.
+     * @return Valor inteiro associado à chave.
+     */
+    public int getInt(String key) {
+        int slot = schema.slot(key);
+        return slot != -1 && kind(slot) == INT ? (int) bits[slot]
+                : ((Number) get(key)).intValue();
+    }
+
+    /**
+     * Obtém o valor inteiro longo associado à chave informada.
+     *
+     * @param key Chave.
+     * @return Valor inteiro longo associado à chave.
+     */
+    public long getLong(String key) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            byte kind = kind(slot);
+            if (kind == INT || kind == LONG) {
+                return bits[slot];
+            }
+        }
+        return ((Number) get(key)).longValue();
+    }
+
+    /**
+     * Obtém o valor de ponto flutuante associado à chave informada.
+     *
+     * @param key Chave.
+     * @return Valor de ponto flutuante associado à chave.
+     */
+    public double getDouble(String key) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            switch (kind(slot)) {
+                case INT:
+                case LONG:
+                    return bits[slot];
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits[slot]);
+                default:
+                    break;
+            }
+        }
+        return ((Number) get(key)).doubleValue();
+    }
+
+    /**
+     * Obtém o valor lógico associado à chave informada.
+     *
+     * @param key Chave.
+     * @return Valor lógico associado à chave.
+     */
+    public boolean getBoolean(String key) {
+        int slot = schema.slot(key);
+        return slot != -1 && kind(slot) == BOOLEAN ? bits[slot] != 0
+                : (Boolean) get(key);
+    }
+
+    /**
+     * Associa o valor inteiro à chave informada.
+     *
+     * @param key Chave.
+     * @param value Valor inteiro.
+     */
+    public void putInt(String key, int value) {
+        if (!store(schema.slot(key), INT, value)) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor inteiro longo à chave informada.
+     *
+     * @param key Chave.
+     * @param value Valor inteiro longo.
+     */
+    public void putLong(String key, long value) {
+        if (!store(schema.slot(key), LONG, value)) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor de ponto flutuante à chave informada.
+     *
+     * @param key Chave.
+     * @param value Valor de ponto flutuante.
+     */
+    public void putDouble(String key, double value) {
+        if (!store(schema.slot(key), DOUBLE,
+                Double.doubleToRawLongBits(value))) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Associa o valor lógico à chave informada.
+     *
+     * @param key Chave.
+     * @param value Valor lógico.
+     */
+    public void putBoolean(String key, boolean value) {
+        if (!store(schema.slot(key), BOOLEAN, value ? 1 : 0)) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Incrementa, sem alocação, o valor numérico associado à chave informada,
+     * seguindo a aritmética das expressões: um valor inteiro permanece
+     * inteiro, com estouro silencioso, um valor inteiro longo é somado em
+     * ponto flutuante e convertido novamente a inteiro longo, e um valor de
+     * ponto flutuante mantém seu tipo.
+     *
+     * @param key Chave.
+     * @param delta Incremento inteiro.
+     * @return Valor lógico informando se o incremento foi realizado; caso
+     * contrário, a chave não pertence ao esquema ou não está associada a um
+     * valor numérico primitivo.
+     */
+    public boolean add(String key, int delta) {
+        int slot = schema.slot(key);
+        switch (slot == -1 ? OBJECT : kind(slot)) {
+            case INT:
+                return store(slot, INT, (int) bits[slot] + delta);
+            case LONG:
+                return store(slot, LONG,
+                        (long) ((double) bits[slot] + delta));
+            case DOUBLE:
+                return store(slot, DOUBLE, Double.doubleToRawLongBits(
+                        Double.longBitsToDouble(bits[slot]) + delta));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Incrementa, sem alocação, o valor numérico associado à chave informada,
+     * seguindo a aritmética das expressões: um valor inteiro é
+     * promovido a inteiro longo e valores inteiros longos e de ponto
+     * flutuante mantêm seus tipos.
+     *
+     * @param key Chave.
+     * @param delta Incremento inteiro longo.
+     * @return Valor lógico informando se o incremento foi realizado; caso
+     * contrário, a chave não pertence ao esquema ou não está associada a um
+     * valor numérico primitivo.
+     */
+    public boolean add(String key, long delta) {
+        int slot = schema.slot(key);
+        switch (slot == -1 ? OBJECT : kind(slot)) {
+            case INT:
+            case LONG:
+                return store(slot, LONG, bits[slot] + delta);
+            case DOUBLE:
+                return store(slot, DOUBLE, Double.doubleToRawLongBits(
+                        Double.longBitsToDouble(bits[slot]) + delta));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Incrementa, sem alocação, o valor numérico associado à chave informada,
+     * promovendo-o a ponto flutuante.
+     *
+     * @param key Chave.
+     * @param delta Incremento de ponto flutuante.
+     * @return Valor lógico informando se o incremento foi realizado; caso
+     * contrário, a chave não pertence ao esquema ou não está associada a um
+     * valor numérico primitivo.
+     */
+    public boolean add(String key, double delta) {
+        int slot = schema.slot(key);
+        switch (slot == -1 ? OBJECT : kind(slot)) {
+            case INT:
+            case LONG:
+                return store(slot, DOUBLE,
+                        Double.doubleToRawLongBits(bits[slot] + delta));
+            case DOUBLE:
+                return store(slot, DOUBLE, Double.doubleToRawLongBits(
+                        Double.longBitsToDouble(bits[slot]) + delta));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Obtém uma cópia independente do mapa, com o mesmo esquema.
+     *
+     * @return Cópia independente do mapa.
+     */
+    public SlotMap copy() {
+        SlotMap copy = new SlotMap(schema);
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        System.arraycopy(kinds, 0, copy.kinds, 0, kinds.length);
+        System.arraycopy(bits, 0, copy.bits, 0, bits.length);
+        copy.occupied = occupied;
+        if (overflow != null) {
+            copy.overflow = new HashMap<>(overflow);
+        }
+        return copy;
+    }
+
+    /**
+     * Verifica se a posição informada está ocupada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @return Valor lógico informando se a posição está ocupada.
+     */
+    public boolean contains(int slot) {
+        return values[slot] != EMPTY;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            return get(slot);
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            return contains(slot);
+        }
+        return overflow != null && overflow.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            return put(slot, value);
+        }
+        if (overflow == null) {
+            overflow = new HashMap<>();
+        }
+        return overflow.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = schema.slot(key);
+        if (slot != -1) {
+            return clear(slot);
+        }
+        return overflow == null ? null : overflow.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, EMPTY);
+        occupied = 0;
+        overflow = null;
+    }
+
+    @Override
+    public int size() {
+        return occupied + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Entries();
+            }
+
+            @Override
+            public int size() {
+                return SlotMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                SlotMap.this.clear();
+            }
+
+        };
+    }
+
+    /**
+     * Esvazia a posição informada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @return Valor anterior ou uma referência inválida.
+     */
+    private Object clear(int slot) {
+        Object previous = get(slot);
+        if (values[slot] == EMPTY) {
+            return null;
+        }
+        values[slot] = EMPTY;
+        kinds[slot] = OBJECT;
+        occupied--;
+        return previous;
+    }
+
+    /**
+     * Obtém o tipo do valor da posição informada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @return Tipo do valor; posições vazias são tratadas como objetos.
+     */
+    private byte kind(int slot) {
+        return values[slot] == EMPTY ? OBJECT : kinds[slot];
+    }
+
+    /**
+     * Armazena a representação primitiva na posição informada, descartando a
+     * forma encapsulada anterior.
+     *
+     * @param slot Posição da chave no esquema ou -1.
+     * @param kind Tipo do valor.
+     * @param value Representação primitiva do valor.
+     * @return Valor lógico informando se o valor foi armazenado; caso
+     * contrário, a posição é inválida.
+     */
+    private boolean store(int slot, byte kind, long value) {
+        if (slot == -1) {
+            return false;
+        }
+        if (values[slot] == EMPTY) {
+            occupied++;
+        }
+        values[slot] = PRIMITIVE;
+        kinds[slot] = kind;
+        bits[slot] = value;
+        return true;
+    }
+
+    /**
+     * Obtém a forma encapsulada do valor primitivo da posição informada.
+     *
+     * @param slot Posição da chave no esquema.
+     * @return Forma encapsulada do valor.
+     */
+    private Object box(int slot) {
+        switch (kinds[slot]) {
+            case INT:
+                return (int) bits[slot];
+            case LONG:
+                return bits[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[slot]);
+            default:
+                return bits[slot] != 0;
+        }
+    }
+
+    /**
+     * Implementa um elemento do mapa associado a uma posição do esquema.
+     */
+    private final class Slot implements Map.Entry<String, Object> {
+
+        // posição da chave no esquema
+        private final int slot;
+
+        /**
+         * Construtor.
+         *
+         * @param slot Posição da chave no esquema.
+         */
+        Slot(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return schema.key(slot);
+        }
+
+        @Override
+        public Object getValue() {
+            return get(slot);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(slot, value);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) object;
+            return getKey().equals(that.getKey())
+                    && Objects.equals(getValue(), that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode()
+                    ^ Objects.hashCode(getValue());
+        }
+
+    }
+
+    /**
+     * Implementa o iterador de elementos, percorrendo as posições ocupadas
+     * do esquema e, em seguida, o mapa auxiliar.
+     */
+    private final class Entries implements Iterator<Map.Entry<String, Object>> {
+
+        // próxima posição a ser verificada
+        private int cursor;
+
+        // última posição obtida ou -1
+        private int last = -1;
+
+        // iterador do mapa auxiliar
+        private Iterator<Map.Entry<String, Object>> rest;
+
+        @Override
+        public boolean hasNext() {
+            while (cursor < values.length && values[cursor] == EMPTY) {
+                cursor++;
+            }
+            if (cursor < values.length) {
+                return true;
+            }
+            if (rest == null && overflow != null) {
+                rest = overflow.entrySet().iterator();
+            }
+            return rest != null && rest.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (cursor < values.length) {
+                last = cursor++;
+                return new Slot(last);
+            }
+            last = -1;
+            return rest.next();
+        }
+
+        @Override
+        public void remove() {
+            if (last != -1) {
+                clear(last);
+                last = -1;
+            } else if (rest != null) {
+                rest.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+
+    }
+
+}
@@ -26,20 +26,41 @@ import br.usp.poli.lta.cereda.eventengine.model.Rule;
 import br.usp.poli.lta.cereda.eventengine.conversions.yaml.YAMLEngine;
 import br.usp.poli.lta.cereda.eventengine.conversions.yaml.YAMLRule;
 import br.usp.poli.lta.cereda.eventengine.model.Event;
+import br.usp.poli.lta.cereda.eventengine.model.EventPool;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.Mark;
 import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event.ID;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
 
 /**
  * Implementa um leitor de uma especificação YAML de um motor de eventos.
@@ -152,4 +173,271 @@ public class YAMLReader implements EngineReader {
         return null;
     }
 
+    /**
+     * Obtém um iterador sobre os eventos de um arquivo informado contendo a
+     * especificação em YAML, preenchendo eventos obtidos do conjunto de
+     * eventos reutilizáveis. O arquivo é lido sob demanda, um elemento da
+     * lista por vez, e os atributos de cada elemento são inseridos
+     * diretamente no evento correspondente; o arquivo é fechado ao final da
+     * iteração ou em caso de erro. Erros de leitura durante a iteração são
+     * reportados por meio de {@link YAMLException}.
+     *
+     * @param file Arquivo informado.
+     * @param pool Conjunto de eventos reutilizáveis.
+     * @return Iterador sobre os eventos ou uma referência inválida, em caso
+     * de erro.
+     */
+    @Override
+    public Iterator<Event> toEvents(File file, EventPool pool) {
+
+        FileReader input = null;
+        try {
+
+            input = new FileReader(file);
+
+            // o limite de tamanho do documento
+            // é desnecessário, pois apenas um
+            // elemento é mantido por vez
+            LoaderOptions options = new LoaderOptions();
+            options.setCodePointLimit(Integer.MAX_VALUE);
+
+            // instancia o parser YAML, que
+            // apresenta cada elemento da lista
+            // como um documento independente
+            Elements elements = new Elements(new ParserImpl(
+                    new StreamReader(input), options));
+            Composer composer = new Composer(elements, new Resolver(),
+                    options);
+            Builder builder = new Builder(options);
+
+            // verifica o início da lista
+            elements.start();
+            FileReader reader = input;
+            return new Iterator<Event>() {
+
+                @Override
+                public boolean hasNext() {
+                    try {
+                        if (composer.checkNode()) {
+                            return true;
+                        }
+                        close(reader);
+                        return false;
+                    } catch (YAMLException exception) {
+                        close(reader);
+                        throw exception;
+                    }
+                }
+
+                @Override
+                public Event next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+
+                        // verifica se o elemento
+                        // é, de fato, um mapa
+                        Node node = composer.getNode();
+                        if (!(node instanceof MappingNode)) {
+                            throw new YAMLException("A map is required.");
+                        }
+
+                        // preenche um evento reutilizável
+                        // com os pares do mapa
+                        Event event = pool.acquire();
+                        builder.fill((MappingNode) node, event);
+                        return event;
+                    } catch (YAMLException exception) {
+                        close(reader);
+                        throw exception;
+                    }
+                }
+
+            };
+        } catch (FileNotFoundException nothandled1) {
+            System.out.println("O arquivo não foi encontrado.");
+        } catch (YAMLException nothandled2) {
+            close(input);
+            System.out.println("O arquivo YAML está incorreto.");
+        }
+
+        // ocorreu um erro, retornar
+        // uma referência inválida
+        return null;
+    }
+
+    /**
+     * Fecha o leitor informado, ignorando erros.
+     *
+     * @param reader Leitor, potencialmente inválido.
+     */
+    private static void close(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException nothandled) {
+                // o leitor não é mais utilizado
+            }
+        }
+    }
+
+    /**
+     * Implementa um parser que apresenta cada elemento da lista de primeiro
+     * nível de um documento YAML como um documento independente, de tal modo
+     * que os elementos possam ser compostos um a um.
+     */
+    private static final class Elements implements Parser {
+
+        // parser do arquivo
+        private final Parser parser;
+
+        // próximo evento, potencialmente inválido
+        private org.yaml.snakeyaml.events.Event next;
+
+        // indica se um elemento está em andamento
+        // e se o seu último evento foi produzido
+        private boolean inside;
+        private boolean closing;
+        private int depth;
+
+        // indica se o fluxo não contém documentos
+        // e se o final do fluxo foi produzido
+        private boolean empty;
+        private boolean finished;
+
+        /**
+         * Construtor.
+         *
+         * @param parser Parser do arquivo.
+         */
+        Elements(Parser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Consome o início do fluxo, mantendo-o como próximo evento, e o
+         * início do documento e da lista de primeiro nível, caso existam.
+         */
+        void start() {
+            next = parser.getEvent();
+            if (parser.checkEvent(ID.StreamEnd)) {
+                empty = true;
+                return;
+            }
+            parser.getEvent();
+            if (!parser.checkEvent(ID.SequenceStart)) {
+                throw new YAMLException("A list is required.");
+            }
+            parser.getEvent();
+        }
+
+        @Override
+        public boolean checkEvent(ID identifier) {
+            org.yaml.snakeyaml.events.Event event = peekEvent();
+            return event != null && event.is(identifier);
+        }
+
+        @Override
+        public org.yaml.snakeyaml.events.Event peekEvent() {
+            if (next == null) {
+                next = produce();
+            }
+            return next;
+        }
+
+        @Override
+        public org.yaml.snakeyaml.events.Event getEvent() {
+            org.yaml.snakeyaml.events.Event event = peekEvent();
+            next = null;
+            return event;
+        }
+
+        /**
+         * Produz o próximo evento do fluxo de documentos.
+         *
+         * @return Próximo evento ou uma referência inválida, após o final do
+         * fluxo.
+         */
+        private org.yaml.snakeyaml.events.Event produce() {
+            if (finished) {
+                return null;
+            }
+            if (empty) {
+                finished = true;
+                return parser.getEvent();
+            }
+
+            // encerra o documento do elemento
+            // após o seu último evento
+            if (closing) {
+                Mark mark = parser.peekEvent().getStartMark();
+                inside = false;
+                closing = false;
+                return new DocumentEndEvent(mark, mark, false);
+            }
+
+            // entre elementos, inicia um novo
+            // documento ou encerra o fluxo ao
+            // final da lista
+            if (!inside) {
+                Mark mark = parser.peekEvent().getStartMark();
+                if (parser.checkEvent(ID.SequenceEnd)) {
+                    parser.getEvent();
+                    parser.getEvent();
+                    finished = true;
+                    return new StreamEndEvent(mark, mark);
+                }
+                inside = true;
+                return new DocumentStartEvent(mark, mark, false, null,
+                        Collections.emptyMap());
+            }
+
+            // repassa os eventos do elemento,
+            // acompanhando sua profundidade
+            org.yaml.snakeyaml.events.Event event = parser.getEvent();
+            if (event.is(ID.MappingStart) || event.is(ID.SequenceStart)) {
+                depth++;
+            } else if (event.is(ID.MappingEnd)
+                    || event.is(ID.SequenceEnd)) {
+                depth--;
+            }
+            closing = depth == 0;
+            return event;
+        }
+
+    }
+
+    /**
+     * Implementa o construtor dos valores de cada elemento, inseridos
+     * diretamente no evento correspondente.
+     */
+    private static final class Builder extends Constructor {
+
+        /**
+         * Construtor.
+         *
+         * @param options Opções de carregamento.
+         */
+        Builder(LoaderOptions options) {
+            super(options);
+        }
+
+        /**
+         * Insere no evento informado os pares do mapa informado.
+         *
+         * @param node Mapa de um elemento.
+         * @param event Evento.
+         */
+        void fill(MappingNode node, Event event) {
+            flattenMapping(node);
+            for (NodeTuple tuple : node.getValue()) {
+                Object key = constructDocument(tuple.getKeyNode());
+                event.put(String.valueOf(key),
+                        constructDocument(tuple.getValueNode()));
+            }
+        }
+
+    }
+
 }